@@ -0,0 +1,74 @@
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Build-værktøj, ikke en del af appen: ligger uden for src/main/java og kommer derfor ikke med i jar'en.
+// Maven kører filen direkte med java launcheren (java StaticAssetCompressor.java <mappe>) efter compile -
+// se exec-maven-plugin i pom.xml. Derfor er alt i denne ene fil.
+// Skriver items.css.gz og items.css.br osv. ved siden af tekst-filerne i static, med højeste kompression.
+// Spring sender dem i stedet for originalen når browseren accepterer det (se StaticResourceConfig).
+// Billeder er allerede komprimerede og springes over. En udgave der ikke er mindre end originalen skrives ikke.
+public final class StaticAssetCompressor {
+
+    private static final Set<String> EXTENSIONS = Set.of("css", "js", "mjs", "svg", "html", "txt", "json", "map");
+
+    private StaticAssetCompressor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Path.of(args[0]);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Brotli4jLoader.ensureAvailability();
+        List<Path> assets;
+        try (Stream<Path> files = Files.walk(root)) {
+            assets = files.filter(Files::isRegularFile).filter(StaticAssetCompressor::isCompressible).toList();
+        }
+        for (Path asset : assets) {
+            byte[] original = Files.readAllBytes(asset);
+            int gzip = write(asset, ".gz", gzip(original), original.length);
+            int brotli = write(asset, ".br", Encoder.compress(original, new Encoder.Parameters().setQuality(11)), original.length);
+            System.out.printf("%s: %d bytes, gzip %d, brotli %d%n", root.relativize(asset), original.length, gzip, brotli);
+        }
+    }
+
+    private static boolean isCompressible(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    private static int write(Path asset, String suffix, byte[] compressed, int originalLength) throws IOException {
+        Path target = asset.resolveSibling(asset.getFileName() + suffix);
+        if (compressed.length >= originalLength) {
+            Files.deleteIfExists(target);
+            return originalLength;
+        }
+        Files.write(target, compressed);
+        return compressed.length;
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
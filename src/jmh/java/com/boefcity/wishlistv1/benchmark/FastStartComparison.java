@@ -0,0 +1,185 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Måler opstart af fast-start jar'en (mvn -Pfast-start package) i hver sin JVM, med og uden lazy init, AOT og AppCDS.
+// For hver start måles fra processen startes til:
+//   started     - Spring Boots egen "Started ... in" (JVM'en er allerede i gang, så den er kortere end resten)
+//   first page  - første 200 svar fra GET /login (Tomcat kører og MVC er klar)
+//   first login - første POST /loginUser er besvaret (JPA og databasen er i brug - med lazy init laves de her)
+// Appen kører mod H2 i hukommelsen, så der er ingen netværks-database der støjer. Flyway migrerer ved hver start.
+// AppCDS arkivet laves her med præcis den classpath der måles med (jar'en + H2), da et arkiv kun passer til sin egen.
+// Kør med: mvn -Pfast-start -DskipTests package
+//          mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.boefcity.wishlistv1.benchmark.FastStartComparison -Djmh.args=
+// Valgfri argumenter: <starter pr. mode> <sti til fast-start mappen>
+public class FastStartComparison {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([0-9.]+) seconds");
+    private static final String MAIN_CLASS = "com.boefcity.wishlistv1.WishListV1Application";
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Path directory = Path.of(args.length > 1 ? args[1] : "target/fast-start").toAbsolutePath();
+        Path jar = directory.resolve("WishListV1.jar");
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException(jar + " not found - build it with: mvn -Pfast-start -DskipTests package");
+        }
+        Path h2 = Path.of(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        String classpath = jar + java.io.File.pathSeparator + h2;
+        Path archive = directory.resolve("comparison.jsa");
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("default", List.of());
+        modes.put("lazy init", List.of("-Dspring.profiles.active=fast-start"));
+        modes.put("lazy init + AOT", List.of("-Dspring.profiles.active=fast-start", "-Dspring.aot.enabled=true"));
+        modes.put("lazy init + AOT + AppCDS", List.of("-Dspring.profiles.active=fast-start", "-Dspring.aot.enabled=true",
+                "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off", "-Xlog:cds+dynamic=off"));
+
+        // Træning: som den sidste mode, men den stopper efter refresh og skriver arkivet.
+        // lazy-initialization=false så klasserne til første request også kommer med.
+        Files.deleteIfExists(archive);
+        run(classpath, List.of("-XX:ArchiveClassesAtExit=" + archive, "-Xlog:cds=off", "-Xlog:cds+dynamic=off",
+                "-Dspring.profiles.active=fast-start", "-Dspring.aot.enabled=true",
+                "-Dspring.main.lazy-initialization=false", "-Dspring.context.exit=onRefresh"), false);
+
+        Map<String, List<Timing>> results = new LinkedHashMap<>();
+        modes.keySet().forEach(mode -> results.put(mode, new ArrayList<>()));
+        // En start pr. mode på skift, så de ikke måles under forskellige forhold (fx andre processer på maskinen)
+        for (int i = 0; i < runs; i++) {
+            for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+                results.get(mode.getKey()).add(run(classpath, mode.getValue(), true));
+            }
+        }
+
+        System.out.printf("%n%d starts per mode, median ms (min - max), measured from process start except 'started'%n", runs);
+        System.out.printf("%-26s %22s %22s %22s%n", "", "started", "first page", "first login");
+        results.forEach((mode, timings) -> System.out.printf("%-26s %22s %22s %22s%n", mode,
+                summary(timings.stream().map(Timing::started).toList()),
+                summary(timings.stream().map(Timing::firstPage).toList()),
+                summary(timings.stream().map(Timing::firstLogin).toList())));
+    }
+
+    private static Timing run(String classpath, List<String> options, boolean measure) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options);
+        command.addAll(List.of("-cp", classpath,
+                "-Dserver.port=" + port,
+                "-Dspring.datasource.url=jdbc:h2:mem:fast-start",
+                "-Dspring.datasource.driver-class-name=org.h2.Driver",
+                "-Dspring.datasource.username=sa",
+                "-Dspring.datasource.password=",
+                "-Dspring.main.banner-mode=off",
+                "-Dlogging.level.root=WARN",
+                "-Dlogging.level." + MAIN_CLASS + "=INFO",
+                MAIN_CLASS));
+
+        long launched = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StartedLine started = new StartedLine();
+        Thread output = Thread.ofVirtual().start(() -> started.read(process));
+        try {
+            if (!measure) {
+                if (!process.waitFor(2, TimeUnit.MINUTES) || process.exitValue() != 0) {
+                    throw new IllegalStateException("Training run failed:\n" + started.log);
+                }
+                return null;
+            }
+            HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+            URI base = URI.create("http://localhost:" + port);
+            Duration firstPage = waitForPage(client, base, process, launched, started);
+            client.send(HttpRequest.newBuilder(base.resolve("/loginUser"))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString("userName=nobody&password=wrong")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            Duration firstLogin = Duration.ofNanos(System.nanoTime() - launched);
+            output.join(Duration.ofSeconds(5).toMillis());
+            return new Timing(started.duration(), firstPage, firstLogin);
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Duration waitForPage(HttpClient client, URI base, Process process, long launched, StartedLine started)
+            throws InterruptedException {
+        HttpRequest login = HttpRequest.newBuilder(base.resolve("/login")).timeout(Duration.ofSeconds(30)).build();
+        long deadline = launched + TimeUnit.MINUTES.toNanos(2);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("App stopped during startup:\n" + started.log);
+            }
+            try {
+                if (client.send(login, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return Duration.ofNanos(System.nanoTime() - launched);
+                }
+            } catch (IOException notListeningYet) {
+                // Tomcat er ikke startet endnu
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("App did not answer within 2 minutes:\n" + started.log);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String summary(List<Duration> durations) {
+        List<Duration> sorted = durations.stream().sorted().toList();
+        return String.format("%d (%d - %d)", sorted.get(sorted.size() / 2).toMillis(),
+                sorted.get(0).toMillis(), sorted.get(sorted.size() - 1).toMillis());
+    }
+
+    private record Timing(Duration started, Duration firstPage, Duration firstLogin) {
+    }
+
+    // Læser appens output, så processen ikke blokerer på en fuld pipe, og finder "Started ... in X seconds"
+    private static class StartedLine {
+        private final StringBuilder log = new StringBuilder();
+        private volatile Duration duration = Duration.ZERO;
+
+        void read(Process process) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (log) {
+                        log.append(line).append('\n');
+                    }
+                    Matcher matcher = STARTED.matcher(line);
+                    if (matcher.find()) {
+                        duration = Duration.ofMillis(Math.round(Double.parseDouble(matcher.group(1)) * 1000));
+                    }
+                }
+            } catch (IOException ignored) {
+                // Processen er stoppet
+            }
+        }
+
+        Duration duration() {
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import com.boefcity.wishlistv1.WishListV1Application;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Load-test af de rigtige flows gennem HTTP: hver session registrerer en ny bruger, logger ind, opretter items,
+// henter /items, retter hvert item og sletter dem igen - som en browser ville (formularer, cookies, redirects).
+// Uden url= startes appen i samme JVM mod H2 test databasen (src/test/resources/application.properties).
+// Kør med: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.boefcity.wishlistv1.benchmark.LoadTest -Djmh.args="users=50 rate=20 seconds=30"
+// Argumenter (navn=værdi, alle valgfri):
+//   users   - højst så mange samtidige sessioner (standard 20)
+//   rate    - nye sessioner pr. sekund. 0 betyder at users sessioner kører i ring så hurtigt de kan (standard 0)
+//   seconds - måletid efter warmup (standard 20), warmup - sekunder der ikke tælles med (standard 5)
+//   items   - items pr. session (standard 3), url - kør mod en app der allerede kører, fx http://localhost:8080
+// Med rate > 0 kommer sessionerne med faste mellemrum uanset hvor hurtigt appen svarer. "session" tiden måles fra
+// det planlagte start-tidspunkt, så den også viser ventetid når users ikke er nok (coordinated omission).
+// Svartider måles pr. endpoint i HdrHistogrammer. Load-generatoren deler CPU med appen når den kører i samme JVM.
+// Alle sessioner kommer fra samme IP, så rate limits (se RateLimitConfig) slås fra når appen startes her.
+// Med url= skal appen startes med RATE_LIMIT=false - ellers måles mest 429 svar, som tælles som fejl.
+public class LoadTest {
+
+    private static final Pattern ITEM_ID = Pattern.compile("/editItem/(\\d+)");
+    private static final String FORM = "application/x-www-form-urlencoded";
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final int itemsPerSession;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sessionCounter = new AtomicLong();
+    // Nøglen er endpoint'et som i controlleren, fx "POST /updateItem/{id}"
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile long measureFrom;
+    private volatile long measureTo;
+
+    LoadTest(URI baseUri, int itemsPerSession) {
+        this.baseUri = baseUri;
+        this.itemsPerSession = itemsPerSession;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "20"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "20"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int items = Integer.parseInt(options.getOrDefault("items", "3"));
+        String url = options.get("url");
+
+        if (url != null) {
+            new LoadTest(URI.create(url), items).run(users, rate, warmup, seconds);
+            return;
+        }
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(WishListV1Application.class)
+                        .properties("server.port=0",
+                                "spring.jpa.show-sql=false",
+                                "wishlist.rate-limit.enabled=false",
+                                "logging.level.root=WARN")
+                        .run()) {
+            URI uri = URI.create("http://localhost:" + context.getWebServer().getPort());
+            new LoadTest(uri, items).run(users, rate, warmup, seconds);
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    void run(int users, double rate, int warmup, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        measureTo = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (rate > 0) {
+                openModel(sessions, users, rate, start);
+            } else {
+                for (int i = 0; i < users; i++) {
+                    sessions.submit(() -> {
+                        while (System.nanoTime() < measureTo) {
+                            session(System.nanoTime());
+                        }
+                    });
+                }
+            }
+        }
+        report(users, rate, seconds);
+    }
+
+    // Sessionerne startes efter en fast plan. Er alle users i gang, venter den nye - og ventetiden tæller med.
+    private void openModel(ExecutorService sessions, int users, double rate, long start) throws InterruptedException {
+        Semaphore running = new Semaphore(users);
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        for (long planned = start; planned < measureTo; planned += interval) {
+            long wait = planned - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            long scheduled = planned;
+            sessions.submit(() -> {
+                running.acquireUninterruptibly();
+                try {
+                    session(scheduled);
+                } finally {
+                    running.release();
+                }
+            });
+        }
+    }
+
+    private void session(long scheduled) {
+        Map<String, String> cookies = new HashMap<>();
+        String userName = "load-" + runId + "-" + sessionCounter.incrementAndGet();
+        String password = "pw-" + userName;
+        // Sessionen tæller kun som ok hvis hvert skridt lykkedes - ellers er den en fejl i "session" linjen
+        boolean completed = false;
+        try {
+            boolean ok = post("POST /register", "/register", "/login", cookies,
+                    Map.of("userName", userName, "userPassword", password)) != null
+                    && post("POST /loginUser", "/loginUser", "/items", cookies,
+                    Map.of("userName", userName, "password", password)) != null;
+            for (int i = 0; ok && i < itemsPerSession; i++) {
+                ok = post("POST /create", "/create", "/items", cookies,
+                        Map.of("name", "item " + i, "description", "load test item " + i,
+                                "link", "https://example.com/" + userName + "/" + i)) != null;
+            }
+            HttpResponse<String> page = ok
+                    ? send("GET /items", HttpRequest.newBuilder(baseUri.resolve("/items")).GET(), null, cookies)
+                    : null;
+            if (page == null) {
+                return;
+            }
+            List<String> itemIds = new ArrayList<>();
+            Matcher matcher = ITEM_ID.matcher(page.body());
+            while (matcher.find()) {
+                itemIds.add(matcher.group(1));
+            }
+            // Sessionen er den eneste der retter sine items, så version 0 er den aktuelle
+            for (String id : itemIds) {
+                ok &= post("POST /updateItem/{id}", "/updateItem/" + id, "/items", cookies,
+                        Map.of("name", "renamed " + id, "description", "updated by load test",
+                                "link", "https://example.com/updated/" + id, "version", "0")) != null;
+            }
+            for (String id : itemIds) {
+                ok &= post("POST /delete/{itemId}", "/delete/" + id, "/items", cookies, Map.of()) != null;
+            }
+            completed = ok && itemIds.size() == itemsPerSession;
+        } finally {
+            record("session", scheduled, completed);
+        }
+    }
+
+    private HttpResponse<String> post(String endpoint, String path, String redirectTo,
+                                      Map<String, String> cookies, Map<String, String> form) {
+        String body = form.entrySet().stream()
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return send(endpoint, HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", FORM)
+                .POST(HttpRequest.BodyPublishers.ofString(body)), redirectTo, cookies);
+    }
+
+    // Returnerer null og tæller en fejl hvis svaret ikke kom eller ikke er det forventede: 200, eller et redirect
+    // til redirectTo. Controllerne redirecter både ved succes og fejl, så det er Location der afgør hvordan det gik.
+    private HttpResponse<String> send(String endpoint, HttpRequest.Builder request, String redirectTo,
+                                      Map<String, String> cookies) {
+        if (!cookies.isEmpty()) {
+            request.header("Cookie", cookies.entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        long started = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            boolean ok = redirectTo == null
+                    ? response.statusCode() == 200
+                    : response.statusCode() == 302 && redirectPath(response).equals(redirectTo);
+            record(endpoint, started, ok);
+            response.headers().allValues("Set-Cookie").forEach(header -> storeCookie(header, cookies));
+            return ok ? response : null;
+        } catch (Exception e) {
+            record(endpoint, started, false);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    // Tomcat sætter ;jsessionid=... på det første redirect, før klienten har fået cookien
+    private static String redirectPath(HttpResponse<String> response) {
+        String path = URI.create(response.headers().firstValue("Location").orElse("")).getPath();
+        int parameters = path.indexOf(';');
+        return parameters < 0 ? path : path.substring(0, parameters);
+    }
+
+    private static void storeCookie(String header, Map<String, String> cookies) {
+        String pair = header.split(";", 2)[0];
+        int eq = pair.indexOf('=');
+        if (eq > 0) {
+            String value = pair.substring(eq + 1);
+            boolean expired = header.toLowerCase().contains("max-age=0");
+            if (value.isEmpty() || expired) {
+                cookies.remove(pair.substring(0, eq));
+            } else {
+                cookies.put(pair.substring(0, eq), value);
+            }
+        }
+    }
+
+    private void record(String endpoint, long started, boolean ok) {
+        long now = System.nanoTime();
+        if (started < measureFrom || now > measureTo) {
+            return;
+        }
+        Stats endpointStats = stats.computeIfAbsent(endpoint, key -> new Stats());
+        if (ok) {
+            endpointStats.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - started));
+        } else {
+            endpointStats.errors.increment();
+        }
+    }
+
+    private void report(int users, double rate, int seconds) {
+        System.out.printf("%nLoad test against %s: %s, %d s measured%n", baseUri,
+                rate > 0 ? String.format("%.1f sessions/s, at most %d at a time", rate, users)
+                        : users + " sessions in a loop", seconds);
+        System.out.printf("%-24s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Map<String, Stats> sorted = new LinkedHashMap<>();
+        stats.keySet().stream().filter(key -> !key.equals("session")).sorted()
+                .forEach(key -> sorted.put(key, stats.get(key)));
+        if (stats.containsKey("session")) {
+            sorted.put("session", stats.get("session"));
+        }
+        sorted.forEach((endpoint, endpointStats) -> {
+            Histogram latency = endpointStats.latency;
+            System.out.printf("%-24s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", endpoint,
+                    latency.getTotalCount(), endpointStats.errors.sum(),
+                    latency.getTotalCount() / (double) seconds,
+                    millis(latency, 50), millis(latency, 90), millis(latency, 99), millis(latency, 99.9),
+                    latency.getMaxValue() / 1000.0);
+        });
+    }
+
+    private static double millis(Histogram latency, double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static class Stats {
+        // Mikrosekunder, 3 betydende cifre. Vokser selv hvis en request tager længere end forventet.
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,53 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import com.boefcity.wishlistv1.config.RateLimitConfig;
+import com.boefcity.wishlistv1.services.RateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Hvad RateLimitConfig lægger oveni hver POST /loginUser, /register og /create.
+// manyClients: tilfældige IP'er, så næsten hvert kald rammer en anden stripe (som i drift).
+// oneClient: alle tråde på samme nøgle, så CAS'en på den ene bucket konkurrerer (værste tilfælde).
+// Limits er så høje at intet afvises - det er admit-vejen der måles.
+// Kør med: mvn -Pbenchmark test-compile exec:exec -Djmh.args="RateLimiterBenchmark -t 4"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int CLIENTS = 4096;
+
+    private RateLimiter limiter;
+    private String[] ips;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        limiter = new RateLimiter("benchmark", Integer.MAX_VALUE, Duration.ofSeconds(1), Integer.MAX_VALUE / 2, 16384);
+        ips = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            ips[i] = "10." + (i >> 8 & 255) + "." + (i & 255) + "." + (i % 7 + 1);
+        }
+    }
+
+    @Benchmark
+    public boolean manyClients() {
+        return limiter.tryAcquire(RateLimitConfig.clientKey(ips[ThreadLocalRandom.current().nextInt(CLIENTS)]));
+    }
+
+    @Benchmark
+    public boolean oneClient() {
+        return limiter.tryAcquire(42);
+    }
+
+    // Kun nøglen (parsning af IP'en) - forskellen til manyClients er limiterens pris
+    @Benchmark
+    public byte[] baseline() {
+        return RateLimitConfig.clientKey(ips[ThreadLocalRandom.current().nextInt(CLIENTS)]);
+    }
+}
@@ -0,0 +1,138 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.UserService;
+import com.boefcity.wishlistv1.WishListV1Application;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Benchmarks af service- og repository-laget mod H2 test databasen (src/test/resources/application.properties).
+// Hver kombination af userCount og wishlistSize får sin egen Spring context og sine egne testdata.
+// Kør med: mvn -Pbenchmark test-compile exec:exec
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+
+    @Param({"10", "100"})
+    private int userCount;
+
+    @Param({"10", "1000"})
+    private int wishlistSize;
+
+    private ConfigurableApplicationContext context;
+    private ItemService itemService;
+    private UserService userService;
+    private ItemRepository itemRepository;
+
+    private int[] userIds;
+    private String[] userNames;
+    private int[] itemIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(WishListV1Application.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.jpa.show-sql=false", "logging.level.root=WARN")
+                .run();
+        itemService = context.getBean(ItemService.class);
+        userService = context.getBean(UserService.class);
+        itemRepository = context.getBean(ItemRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+
+        userIds = new int[userCount];
+        userNames = new String[userCount];
+        List<Integer> allItemIds = new ArrayList<>();
+        for (int u = 0; u < userCount; u++) {
+            User user = new User();
+            user.setUserName("benchUser" + u);
+            user.setUserPassword("benchPass" + u);
+            user.setItems(new ArrayList<>());
+            for (int i = 0; i < wishlistSize; i++) {
+                Item item = new Item();
+                item.setName("item " + i);
+                item.setDescription("description of item " + i + " for user " + u);
+                item.setLink("https://example.com/items/" + u + "/" + i);
+                item.setUser(user);
+                user.getItems().add(item);
+            }
+            userRepository.save(user); // Items gemmes via cascade, se User
+            userIds[u] = user.getUserId();
+            userNames[u] = user.getUserName();
+            user.getItems().forEach(item -> allItemIds.add(item.getId()));
+        }
+        itemIds = allItemIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private int randomUser() {
+        return ThreadLocalRandom.current().nextInt(userCount);
+    }
+
+    @Benchmark
+    public List<Item> findByUserUserId() {
+        return itemService.findByUserUserId(userIds[randomUser()]);
+    }
+
+    // Samme opslag uden om WishlistCache, dvs. hele vejen til databasen
+    @Benchmark
+    public List<Item> findByUserUserIdRepository() {
+        return itemRepository.findByUserUserId(userIds[randomUser()]);
+    }
+
+    @Benchmark
+    public ItemPage findFirstPage() {
+        return itemService.findPageByUserUserId(userIds[randomUser()], null, null, ItemService.DEFAULT_PAGE_SIZE);
+    }
+
+    // Inkl. opslaget af den nuværende version, som formularen ellers ville have med
+    @Benchmark
+    public ItemView update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = itemIds[random.nextInt(itemIds.length)];
+        ItemView current = itemService.findViewById(id).orElseThrow();
+        Item details = new Item();
+        details.setName("updated " + random.nextInt());
+        details.setDescription("updated description");
+        details.setLink("https://example.com/updated");
+        details.setVersion(current.getVersion());
+        itemService.update(current.getUserId(), id, details);
+        return current;
+    }
+
+    @Benchmark
+    public boolean checkLoginValid() {
+        int u = randomUser();
+        return userService.checkLogin(userNames[u], "benchPass" + u);
+    }
+
+    @Benchmark
+    public boolean checkLoginUnknownUser() {
+        return userService.checkLogin("unknown" + ThreadLocalRandom.current().nextInt(), "wrongPass");
+    }
+
+    @Benchmark
+    public User findByUserName() {
+        return userService.findByUserName(userNames[randomUser()]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import com.boefcity.wishlistv1.WishListV1Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.metrics.StartupStep;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+// Sammenligner opstartstiden med Hibernates ddl-auto=update og med Flyway migrations + ddl-auto=validate.
+// Begge starter mod den samme, allerede migrerede database, så forskellen er hvad hver af dem gør ved hver opstart:
+// update læser hele skemaet og sammenligner det med entities, Flyway læser sin historik-tabel og validate tjekker tabellerne.
+// Kør med: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.boefcity.wishlistv1.benchmark.StartupComparison -Djmh.args=
+// Valgfri argumenter: <opstarter pr. mode> [<jdbc url> <brugernavn> <password>] - uden url bruges H2 i hukommelsen.
+// Mod H2 i hukommelsen er metadata-opslag næsten gratis. Mod MySQL over netværket koster hvert opslag en round trip,
+// så mål også mod den rigtige database før der konkluderes noget.
+// Alle opstarter sker i samme JVM, så de første er langsommere (JIT) - derfor skiftes der mellem de to modes.
+public class StartupComparison {
+
+    private static final String[] UPDATE = {"spring.flyway.enabled=false", "spring.jpa.hibernate.ddl-auto=update"};
+    private static final String[] MIGRATIONS = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=validate"};
+    // Bønnerne hvor skemaet bliver tjekket eller opdateret
+    private static final Set<String> SCHEMA_BEANS = Set.of("flyway", "flywayInitializer", "&entityManagerFactory");
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<String> database = args.length > 3
+                ? List.of("spring.datasource.url=" + args[1], "spring.datasource.username=" + args[2],
+                "spring.datasource.password=" + args[3], "spring.datasource.driver-class-name=com.mysql.cj.jdbc.Driver",
+                "spring.jpa.database-platform=org.hibernate.dialect.MySQLDialect")
+                : List.of("spring.datasource.url=jdbc:h2:mem:startup-comparison;DB_CLOSE_DELAY=-1");
+
+        // Første opstart migrerer databasen, de næste to varmer JVM'en op
+        start(database, MIGRATIONS);
+        start(database, UPDATE);
+        start(database, MIGRATIONS);
+
+        List<Timing> update = new ArrayList<>();
+        List<Timing> migrations = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            update.add(start(database, UPDATE));
+            migrations.add(start(database, MIGRATIONS));
+        }
+
+        System.out.printf("%n%d startups per mode, median (min - max)%n", runs);
+        System.out.printf("%-32s %28s %28s%n", "", "total startup", "flyway + JPA");
+        report("ddl-auto=update", update);
+        report("flyway + ddl-auto=validate", migrations);
+    }
+
+    private static Timing start(List<String> database, String[] mode) {
+        BufferingApplicationStartup startup = new BufferingApplicationStartup(20000);
+        List<String> properties = new ArrayList<>(database);
+        properties.addAll(Arrays.asList(mode));
+        properties.addAll(List.of("server.port=0", "spring.jpa.show-sql=false", "logging.level.root=WARN"));
+
+        long started = System.nanoTime();
+        try (ConfigurableApplicationContext ignored = new SpringApplicationBuilder(WishListV1Application.class)
+                .applicationStartup(startup)
+                .properties(properties.toArray(String[]::new))
+                .run()) {
+            Duration total = Duration.ofNanos(System.nanoTime() - started);
+            // Flyway kører før JPA starter, og entityManagerFactory's tid er Hibernates (inkl. update/validate)
+            Duration schema = startup.getBufferedTimeline().getEvents().stream()
+                    .filter(event -> event.getStartupStep().getName().equals("spring.beans.instantiate"))
+                    .filter(event -> SCHEMA_BEANS.contains(beanName(event.getStartupStep())))
+                    .map(event -> event.getDuration())
+                    .reduce(Duration.ZERO, Duration::plus);
+            return new Timing(total, schema);
+        }
+    }
+
+    private static String beanName(StartupStep step) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (tag.getKey().equals("beanName")) {
+                return tag.getValue();
+            }
+        }
+        return "";
+    }
+
+    private static void report(String mode, List<Timing> timings) {
+        System.out.printf("%-32s %28s %28s%n", mode,
+                summary(timings.stream().map(Timing::total).toList()),
+                summary(timings.stream().map(Timing::schema).toList()));
+    }
+
+    private static String summary(List<Duration> durations) {
+        List<Duration> sorted = durations.stream().sorted().toList();
+        return String.format("%d ms (%d - %d)", sorted.get(sorted.size() / 2).toMillis(),
+                sorted.get(0).toMillis(), sorted.get(sorted.size() - 1).toMillis());
+    }
+
+    private record Timing(Duration total, Duration schema) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.boefcity.wishlistv1.benchmark;
+
+import com.boefcity.wishlistv1.WishListV1Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sammenligner throughput med platform- og virtual threads når mange requests venter på langsomme queries.
+// Appen startes to gange mod H2, og et endpoint kalder en query der sover SLOW_QUERY_MS i databasen.
+// Tomcat begrænses til TOMCAT_THREADS tråde og connection pool'en gøres stor, så det er trådene der er flaskehalsen.
+// Kør med: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.boefcity.wishlistv1.benchmark.VirtualThreadComparison -Djmh.args=
+// Valgfri argumenter: <samtidige klienter> <sekunder pr. kørsel> <slow-query|slow-io>
+// slow-io venter uden for JDBC driveren. Forskellen mellem de to viser om driveren pinner virtual threads (synchronized).
+// Load-generatoren kører i samme JVM, så på en maskine med få kerner bliver CPU'en hurtigt grænsen.
+public class VirtualThreadComparison {
+
+    private static final int SLOW_QUERY_MS = 200;
+    private static final int TOMCAT_THREADS = 50;
+    private static final int POOL_SIZE = 400;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String endpoint = args.length > 2 ? args[2] : "slow-query";
+
+        double platform = run(false, clients, seconds, endpoint);
+        double virtual = run(true, clients, seconds, endpoint);
+
+        System.out.printf("%nSlow query %d ms, %d clients, tomcat max threads %d, pool size %d%n",
+                SLOW_QUERY_MS, clients, TOMCAT_THREADS, POOL_SIZE);
+        System.out.printf("platform threads: %8.1f requests/s%n", platform);
+        System.out.printf("virtual threads:  %8.1f requests/s%n", virtual);
+    }
+
+    private static double run(boolean virtualThreads, int clients, int seconds, String endpoint) throws Exception {
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+                new SpringApplicationBuilder(WishListV1Application.class)
+                        .profiles("slow-query-comparison")
+                        .properties("server.port=0",
+                                "spring.threads.virtual.enabled=" + virtualThreads,
+                                "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                                "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                                "logging.level.root=WARN")
+                        .run()) {
+            context.getBean(JdbcTemplate.class)
+                    .execute("CREATE ALIAS IF NOT EXISTS SLEEP_MS FOR '" + VirtualThreadComparison.class.getName() + ".sleep'");
+            URI uri = URI.create("http://localhost:" + context.getWebServer().getPort() + "/" + endpoint);
+            return measure(uri, clients, seconds);
+        }
+    }
+
+    private static double measure(URI uri, int clients, int seconds) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).build();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                clientThreads.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (System.nanoTime() > warmupEnd) {
+                                (response.statusCode() == 200 ? completed : failed).incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+        if (failed.get() > 0) {
+            System.out.println("Failed requests: " + failed.get());
+        }
+        return completed.get() / (double) seconds;
+    }
+
+    // Kaldes af H2 via SLEEP_MS aliaset og simulerer en langsom query
+    public static int sleep(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return millis;
+    }
+
+    @Profile("slow-query-comparison")
+    @RestController
+    static class SlowQueryController {
+
+        private final JdbcTemplate jdbcTemplate;
+
+        SlowQueryController(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @GetMapping("/slow-query")
+        public Integer slowQuery() {
+            return jdbcTemplate.queryForObject("select SLEEP_MS(" + SLOW_QUERY_MS + ")", Integer.class);
+        }
+
+        // Samme ventetid uden for JDBC driveren
+        @GetMapping("/slow-io")
+        public Integer slowIo() throws InterruptedException {
+            Thread.sleep(SLOW_QUERY_MS);
+            return jdbcTemplate.queryForObject("select 1", Integer.class);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.boefcity.wishlistv1;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+public interface AuthService {
+    //Hvem er logget ind - enten via HttpSession eller en signeret cookie, se auth.mode i application.properties
+    Integer currentUserId(HttpServletRequest request);
+    void login(int userId, HttpServletRequest request, HttpServletResponse response);
+}
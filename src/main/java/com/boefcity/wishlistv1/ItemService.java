@@ -1,21 +1,60 @@
 package com.boefcity.wishlistv1;
 
+import com.boefcity.wishlistv1.dto.ImportResult;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.dto.ItemView;
 import com.boefcity.wishlistv1.entity.Item;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 
 public interface ItemService {
     //ItemService bruges til seperation of concern og loose coupling osv.
+    int DEFAULT_PAGE_SIZE = 20;
+    int MAX_PAGE_SIZE = 100;
+
     void create (Item item);
     Optional<Item> findById (int id);
 
+    // Til visning - kun de felter siden bruger, uden at loade item'ets User
+    Optional<ItemView> findViewById(int id);
+
     void deleteById(int id);
 
+    // Sletter de af items der tilhører brugeren og returnerer hvor mange det var. Andres items røres ikke.
+    int deleteByIdsForUser(int userId, Collection<Integer> ids);
+
     List<Item> findAll();
 
-    Item update(int id, Item itemDetails);
+    // Gemmer name/description/link hvis item'et er brugerens og itemDetails.version stadig er den nyeste.
+    // Kaster EntityNotFoundException hvis item'et ikke findes eller ikke er brugerens, og
+    // ItemUpdateConflictException hvis en anden har gemt item'et imens.
+    void update(int userId, int id, Item itemDetails);
     List<Item> findByUserUserId(int userId);
+
+    // Flytter item'et lige efter item'et after, eller lige før item'et before (højst én af dem sættes).
+    // Uden nogen af dem flyttes det øverst. Kun item'et selv skrives - se ItemRankRebalancer.
+    // Kaster EntityNotFoundException hvis et af items ikke findes eller ikke er brugerens.
+    void move(int userId, int id, Integer after, Integer before);
+
+    // Henter én side af brugerens wishlist. after/before er cursorer fra en tidligere side (højst én af dem sættes).
+    ItemPage findPageByUserUserId(int userId, Integer after, Integer before, int size);
+
+    // Skifter hver gang brugerens wishlist ændres (create/update/delete/import). Bruges som ETag for /items.
+    String wishlistVersion(int userId);
+
+    // Opretter mange items på én gang i én transaktion. Ugyldige rækker springes over og rapporteres i resultatet.
+    ImportResult importItems(int userId, InputStream input, ItemFileFormat format);
+
+    // Skriver hele brugerens wishlist til output uden at have den i hukommelsen på én gang.
+    void exportItems(int userId, ItemFileFormat format, OutputStream output);
+
+    // Søger i brugerens items (navn, beskrivelse og linkets host). Ord matches som prefix, bedste match først.
+    List<ItemSearchDocument> searchItems(int userId, String query, int limit);
 }
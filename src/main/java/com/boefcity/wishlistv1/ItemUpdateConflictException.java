@@ -0,0 +1,18 @@
+package com.boefcity.wishlistv1;
+
+import com.boefcity.wishlistv1.dto.ItemView;
+
+// Kastes af ItemService.update når item'et er gemt af en anden siden formularen blev åbnet (optimistic locking).
+// Indeholder den udgave der ligger i databasen nu, så brugeren kan se hvad der blev ændret.
+public class ItemUpdateConflictException extends RuntimeException {
+    private final ItemView current;
+
+    public ItemUpdateConflictException(ItemView current) {
+        super("Item " + current.getId() + " was changed by someone else (now version " + current.getVersion() + ")");
+        this.current = current;
+    }
+
+    public ItemView getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,19 @@
+package com.boefcity.wishlistv1;
+
+import com.boefcity.wishlistv1.entity.LinkPreview;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface LinkPreviewService {
+    //LinkPreviewService bruges til seperation of concern og loose coupling osv.
+
+    // Returnerer de previews der allerede er hentet (nøgle = link). Manglende previews hentes i baggrunden,
+    // så kalderen aldrig venter på en fremmed side.
+    Map<String, LinkPreview> previewsFor(Collection<String> links);
+
+    void requestPreview(String link);
+
+    // Om et af linkene er ved at blive hentet lige nu - så ændrer en side med linkene sig snart
+    boolean isFetching(Collection<String> links);
+}
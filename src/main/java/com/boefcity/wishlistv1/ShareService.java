@@ -0,0 +1,21 @@
+package com.boefcity.wishlistv1;
+
+import com.boefcity.wishlistv1.dto.SharedPage;
+
+import java.util.Optional;
+
+public interface ShareService {
+    //ShareService bruges til seperation of concern og loose coupling osv.
+
+    // Brugerens share token, eller null hvis wishlisten ikke er delt
+    String findToken(int userId);
+
+    // Giver brugeren et nyt token. Et tidligere link holder op med at virke.
+    String createToken(int userId);
+
+    // Det delte link holder op med at virke
+    void stopSharing(int userId);
+
+    // Den read-only side som alle med linket kan se. Empty hvis token'et ikke findes.
+    Optional<SharedPage> findPage(String token, Integer after);
+}
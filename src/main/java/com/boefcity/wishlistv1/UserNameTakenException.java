@@ -0,0 +1,8 @@
+package com.boefcity.wishlistv1;
+
+// Kastes af UserService.saveUser når brugernavnet allerede er i brug
+public class UserNameTakenException extends RuntimeException {
+    public UserNameTakenException(String userName) {
+        super("Username already exists: " + userName);
+    }
+}
@@ -2,8 +2,10 @@ package com.boefcity.wishlistv1;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
+@EnableAsync // @Async metoder kører på virtual threads når spring.threads.virtual.enabled=true
 public class WishListV1Application {
 
     public static void main(String[] args) {
@@ -0,0 +1,139 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.services.AuthTokenSigner;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.support.AbstractFlashMapManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Flash attributter (RedirectAttributes.addFlashAttribute) gemmes normalt i HttpSession.
+// Med auth.mode=token lægges de i stedet i en signeret cookie, så en redirect ikke opretter en session.
+// Kun tekst overlever: lister bliver til lister af toString() og alt andet til toString() -
+// det er hvad templates bruger (message og importErrors). Lister og tekster afkortes så cookien holder sig under 4 KB.
+public class CookieFlashMapManager extends AbstractFlashMapManager {
+
+    public static final String COOKIE_NAME = "WISHLIST_FLASH";
+    private static final int MAX_LIST_SIZE = 20;
+    private static final int MAX_TEXT_LENGTH = 200;
+
+    private final AuthTokenSigner signer;
+    private final ObjectMapper objectMapper;
+
+    public CookieFlashMapManager(AuthTokenSigner signer, ObjectMapper objectMapper) {
+        this.signer = signer;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected List<FlashMap> retrieveFlashMaps(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                return decode(cookie.getValue());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void updateFlashMaps(List<FlashMap> flashMaps, HttpServletRequest request, HttpServletResponse response) {
+        String value = flashMaps.isEmpty() ? "" : encode(flashMaps);
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, value)
+                .httpOnly(true)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(value.isEmpty() ? 0 : getFlashMapTimeout())
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    // Cookien tilhører én klient, så der er ikke noget at synkronisere på tværs af requests
+    @Override
+    protected Object getFlashMapsMutex(HttpServletRequest request) {
+        return null;
+    }
+
+    private String encode(List<FlashMap> flashMaps) {
+        List<StoredFlashMap> stored = new ArrayList<>();
+        for (FlashMap flashMap : flashMaps) {
+            StoredFlashMap entry = new StoredFlashMap();
+            entry.setPath(flashMap.getTargetRequestPath());
+            entry.setParams(new LinkedHashMap<>(flashMap.getTargetRequestParams()));
+            entry.setExpires(flashMap.getExpirationTime());
+            flashMap.forEach((name, value) -> entry.getAttributes().put(name, toText(value)));
+            stored.add(entry);
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(stored);
+            return signer.sign(AuthTokenSigner.Purpose.FLASH, Base64.getUrlEncoder().withoutPadding().encodeToString(json));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write flash attributes", e);
+        }
+    }
+
+    private List<FlashMap> decode(String value) {
+        String payload = signer.verify(AuthTokenSigner.Purpose.FLASH, value);
+        if (payload == null) {
+            return null;
+        }
+        try {
+            List<StoredFlashMap> stored = objectMapper.readValue(Base64.getUrlDecoder().decode(payload),
+                    new TypeReference<List<StoredFlashMap>>() {});
+            List<FlashMap> flashMaps = new ArrayList<>();
+            for (StoredFlashMap entry : stored) {
+                FlashMap flashMap = new FlashMap();
+                flashMap.setTargetRequestPath(entry.getPath());
+                MultiValueMap<String, String> params = new LinkedMultiValueMap<>(entry.getParams());
+                flashMap.addTargetRequestParams(params);
+                flashMap.setExpirationTime(entry.getExpires());
+                flashMap.putAll(entry.getAttributes());
+                flashMaps.add(flashMap);
+            }
+            return flashMaps;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Object toText(Object value) {
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().limit(MAX_LIST_SIZE).map(CookieFlashMapManager::truncate).toList();
+        }
+        return truncate(value);
+    }
+
+    private static String truncate(Object value) {
+        String text = String.valueOf(value);
+        return text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class StoredFlashMap {
+        private String path;
+        private Map<String, List<String>> params = new LinkedHashMap<>();
+        private long expires;
+        private Map<String, Object> attributes = new LinkedHashMap<>();
+    }
+}
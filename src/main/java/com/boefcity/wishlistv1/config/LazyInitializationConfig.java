@@ -0,0 +1,18 @@
+package com.boefcity.wishlistv1.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Med spring.main.lazy-initialization=true (fast-start profilen) laves bønnerne ved første brug.
+// Migrations skal dog være kørt inden appen tager imod requests - ellers ville første request køre dem.
+// Resten kan vente: baggrundstrådene i fx ItemWriteBehindQueue startes sammen med den service der bruger dem.
+@Configuration
+public class LazyInitializationConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerFlywayMigrations() {
+        return LazyInitializationExcludeFilter.forBeanTypes(FlywayMigrationInitializer.class);
+    }
+}
@@ -0,0 +1,17 @@
+package com.boefcity.wishlistv1.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // Gør @Timed virksom på Spring beans (se ItemServiceImpl og UserServiceImpl).
+    // Hver metode får sin egen timer, tagget med class og method.
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -0,0 +1,155 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.AuthService;
+import com.boefcity.wishlistv1.services.RateLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// Rate limits foran de endpoints en enkelt klient kan bruge til at tage alle connections (wishlist.rate-limit.*):
+//   POST /loginUser og /register - pr. klient IP (password-gæt og masseoprettelse af brugere deler én bucket)
+//   POST /create                 - pr. klient IP og pr. bruger
+// En afvist request får 429 med Retry-After før controlleren kører, så den hverken rører session eller database.
+// Antal afviste tælles i wishlist.ratelimit.rejected med limiter tag. Se RateLimiter for hvordan der tælles.
+// Klientens IP er request.getRemoteAddr() - bag en proxy skal server.forward-headers-strategy sættes,
+// ellers deler alle klienter proxyens IP. En IPv6 klient har typisk et helt /64 net, så den tælles pr. /64 (se clientKey).
+@Configuration
+@ConditionalOnProperty(name = "wishlist.rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfig implements WebMvcConfigurer, MeterBinder {
+
+    private final AuthService authService;
+    private final RateLimiter authPerIp;
+    private final RateLimiter createPerIp;
+    private final RateLimiter createPerUser;
+
+    public RateLimitConfig(AuthService authService,
+                           @Value("${wishlist.rate-limit.stripes:16384}") int stripes,
+                           @Value("${wishlist.rate-limit.auth-per-ip.permits:30}") int authPermits,
+                           @Value("${wishlist.rate-limit.auth-per-ip.period:1m}") Duration authPeriod,
+                           @Value("${wishlist.rate-limit.auth-per-ip.burst:10}") int authBurst,
+                           @Value("${wishlist.rate-limit.create-per-ip.permits:600}") int createIpPermits,
+                           @Value("${wishlist.rate-limit.create-per-ip.period:1m}") Duration createIpPeriod,
+                           @Value("${wishlist.rate-limit.create-per-ip.burst:100}") int createIpBurst,
+                           @Value("${wishlist.rate-limit.create-per-user.permits:60}") int createUserPermits,
+                           @Value("${wishlist.rate-limit.create-per-user.period:1m}") Duration createUserPeriod,
+                           @Value("${wishlist.rate-limit.create-per-user.burst:30}") int createUserBurst) {
+        this.authService = authService;
+        this.authPerIp = new RateLimiter("auth-per-ip", authPermits, authPeriod, authBurst, stripes);
+        this.createPerIp = new RateLimiter("create-per-ip", createIpPermits, createIpPeriod, createIpBurst, stripes);
+        this.createPerUser = new RateLimiter("create-per-user", createUserPermits, createUserPeriod, createUserBurst, stripes);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new PostInterceptor() {
+            @Override
+            boolean admit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                return orReject(authPerIp.tryAcquire(clientKey(request.getRemoteAddr())), authPerIp, response);
+            }
+        }).addPathPatterns("/loginUser", "/register");
+        registry.addInterceptor(new PostInterceptor() {
+            @Override
+            boolean admit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                if (!orReject(createPerIp.tryAcquire(clientKey(request.getRemoteAddr())), createPerIp, response)) {
+                    return false;
+                }
+                // Ikke logget ind sendes videre til /login af controlleren
+                Integer userId = authService.currentUserId(request);
+                return userId == null || orReject(createPerUser.tryAcquire(userId), createPerUser, response);
+            }
+        }).addPathPatterns("/create");
+    }
+
+    // Nøglen en klient tælles under: de 4 bytes af en IPv4 adresse, eller de første 8 bytes (/64 prefixet) af en
+    // IPv6 adresse - ellers kunne klienten skifte adresse inden for sit net ved hver request.
+    // IPv4-mapped IPv6 (::ffff:a.b.c.d) er den samme klient som a.b.c.d. Andet end en IP bruges som det er.
+    public static byte[] clientKey(String remoteAddr) {
+        if (remoteAddr == null) {
+            return new byte[0];
+        }
+        byte[] ipv4 = parseIpv4(remoteAddr);
+        if (ipv4 != null) {
+            return ipv4;
+        }
+        if (remoteAddr.indexOf(':') >= 0) {
+            try {
+                // En adresse med ':' slås aldrig op i DNS - den er enten en IPv6 literal eller ugyldig
+                byte[] address = InetAddress.getByName(remoteAddr).getAddress();
+                return address.length == 16 ? Arrays.copyOf(address, 8) : address;
+            } catch (UnknownHostException e) {
+                // Ikke en IP
+            }
+        }
+        return remoteAddr.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Kun a.b.c.d - InetAddress.getByName ville slå alt andet op i DNS
+    private static byte[] parseIpv4(String address) {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                return null;
+            }
+            int value = Integer.parseInt(part);
+            if (value > 255) {
+                return null;
+            }
+            bytes[i] = (byte) value;
+        }
+        return bytes;
+    }
+
+    // Formularerne (GET /register) begrænses ikke
+    private abstract static class PostInterceptor implements HandlerInterceptor {
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+                throws IOException {
+            return !"POST".equals(request.getMethod()) || admit(request, response);
+        }
+
+        abstract boolean admit(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    // Svarer 429 hvis der ikke var en token
+    private static boolean orReject(boolean acquired, RateLimiter limiter, HttpServletResponse response) throws IOException {
+        if (!acquired) {
+            long seconds = Math.max(1, (limiter.retryAfter().toMillis() + 999) / 1000);
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests - try again in " + seconds + " seconds");
+        }
+        return acquired;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (RateLimiter limiter : List.of(authPerIp, createPerIp, createPerUser)) {
+            FunctionCounter.builder("wishlist.ratelimit.rejected", limiter, RateLimiter::rejected)
+                    .description("Requests rejected with 429 because the client used up its rate limit")
+                    .tag("limiter", limiter.getName())
+                    .register(registry);
+        }
+    }
+}
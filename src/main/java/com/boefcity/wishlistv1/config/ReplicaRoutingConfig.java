@@ -0,0 +1,83 @@
+package com.boefcity.wishlistv1.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Aktiveres når wishlist.replicas.urls er sat (DB_REPLICA_URLS). Erstatter Spring Boots DataSource med en
+// LazyConnectionDataSourceProxy: den henter først en rigtig connection ved første statement, hvor det vides
+// om transaktionen er read-only. Read-only går til ReplicaRoutingDataSource, resten til primary.
+@Configuration
+@ConditionalOnExpression("'${wishlist.replicas.urls:}' != ''")
+public class ReplicaRoutingConfig {
+
+    // En replica der er gået ned må ikke holde en request hen i Hikaris standard timeout på 30 sekunder
+    private static final long REPLICA_CONNECTION_TIMEOUT_MS = 1000;
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties,
+                                                             Environment environment,
+                                                             @Value("${wishlist.replicas.urls}") String[] urls,
+                                                             @Value("${wishlist.replicas.username:}") String username,
+                                                             @Value("${wishlist.replicas.password:}") String password,
+                                                             @Value("${wishlist.replicas.check-interval:1s}") Duration checkInterval,
+                                                             @Value("${wishlist.replicas.max-lag:5s}") Duration maxLag) {
+        HikariDataSource primary = pool(properties, environment, "primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource replica = pool(properties, environment, name);
+            replica.setJdbcUrl(url.trim());
+            // Uden egne credentials bruges primary's
+            if (!username.isBlank()) {
+                replica.setUsername(username);
+                replica.setPassword(password);
+            }
+            replica.setReadOnly(true);
+            replica.setConnectionTimeout(Math.min(replica.getConnectionTimeout(), REPLICA_CONNECTION_TIMEOUT_MS));
+            replica.setInitializationFailTimeout(-1); // Appen skal kunne starte selvom en replica er nede
+            replicas.put(name, replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, checkInterval, maxLag);
+    }
+
+    // Startes når alle singletons er lavet - også Flyway, som først skal lave replica_heartbeat tabellen
+    @Bean
+    public SmartInitializingSingleton replicaHealthCheck(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return replicaRoutingDataSource::start;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource.getPrimary());
+        dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        return dataSource;
+    }
+
+    // Samme pool-indstillinger (spring.datasource.hikari.*) som Spring Boot ville have givet primary
+    private static HikariDataSource pool(DataSourceProperties properties, Environment environment, String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        return pool;
+    }
+}
@@ -0,0 +1,221 @@
+package com.boefcity.wishlistv1.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Giver read-only connections fra replicas. ReplicaRoutingConfig sætter den som readOnlyDataSource på en
+// LazyConnectionDataSourceProxy, så kun @Transactional(readOnly = true) kommer hertil - alt andet går til primary.
+// - replicas vælges på skift (round-robin) blandt dem der er sunde
+// - en baggrundstråd tjekker hver replica hvert check-interval: svarer den, og hvor langt er den bagud?
+// - forsinkelsen måles med en heartbeat-række som skrives på primary og når replicas via replikeringen
+//   (som pt-heartbeat). Målingen kan være op til ét check-interval for høj, så max-lag skal være større.
+// - er ingen replica sund eller tæt nok på primary, bruges primary
+// Læsninger der skal se brugerens egne ændringer (fx når cachen fyldes) kan tvinges til primary med onPrimary.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+
+    private static final String READ_HEARTBEAT_SQL = "select beat_millis from replica_heartbeat where id = 1";
+    private static final String UPDATE_HEARTBEAT_SQL = "update replica_heartbeat set beat_millis = ? where id = 1";
+    private static final String INSERT_HEARTBEAT_SQL = "insert into replica_heartbeat (id, beat_millis) values (1, ?)";
+
+    @Getter
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Duration checkInterval;
+    private final long maxLagMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private ScheduledExecutorService checker;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    Duration checkInterval, Duration maxLag) {
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.checkInterval = checkInterval;
+        this.maxLagMillis = maxLag.toMillis();
+    }
+
+    // Kører læsninger i action mod primary, også inden for en read-only transaktion der ikke har hentet sin connection endnu
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                FORCE_PRIMARY.remove();
+            }
+        }
+    }
+
+    // Tabellen replica_heartbeat laves af Flyway (V4__replica_heartbeat), så start kaldes først efter migrationerne
+    public void start() {
+        checkReplicas(); // Så replicas kan bruges fra første request
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = checkInterval.toMillis();
+        checker.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (FORCE_PRIMARY.get() == null && !replicas.isEmpty()) {
+            int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    Connection connection = replica.dataSource.getConnection();
+                    replica.reads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    // Gået ned siden sidste tjek - næste tjek finder ud af hvornår den er tilbage
+                    replica.markUnhealthy("connection failed: " + e.getMessage());
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    // Replicas har deres egne credentials, så en connection med andre credentials kan kun komme fra primary
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryReads.increment();
+        return primary.getConnection(username, password);
+    }
+
+    // Læser heartbeat på replicas før den nye skrives, så en replica der er fulgt med måles til under ét interval
+    void checkReplicas() {
+        long now = System.currentTimeMillis();
+        for (Replica replica : replicas) {
+            try {
+                List<Long> beats = new JdbcTemplate(replica.dataSource).queryForList(READ_HEARTBEAT_SQL, Long.class);
+                if (beats.isEmpty()) {
+                    replica.markUnhealthy("no heartbeat yet");
+                    continue;
+                }
+                replica.lagMillis = Math.max(0, now - beats.get(0));
+                if (replica.lagMillis > maxLagMillis) {
+                    replica.markUnhealthy("lagging " + replica.lagMillis + " ms behind primary");
+                } else {
+                    replica.markHealthy();
+                }
+            } catch (DataAccessException e) {
+                replica.markUnhealthy("health check failed: " + e.getMessage());
+            }
+        }
+        writeHeartbeat(now);
+    }
+
+    private void writeHeartbeat(long now) {
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(primary);
+            if (jdbcTemplate.update(UPDATE_HEARTBEAT_SQL, now) == 0) {
+                jdbcTemplate.update(INSERT_HEARTBEAT_SQL, now);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not write replica heartbeat on primary", e);
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        // Så Hikari metrics og health checks finder primary's pool
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : replicas) {
+            Gauge.builder("wishlist.replica.lag", replica, r -> r.lagMillis)
+                    .tags("replica", replica.name).baseUnit("milliseconds")
+                    .description("How far the replica is behind primary at the last health check").register(registry);
+            Gauge.builder("wishlist.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tags("replica", replica.name).register(registry);
+            FunctionCounter.builder("wishlist.replica.reads", replica.reads, LongAdder::sum)
+                    .tags("target", replica.name).description("Read-only connections handed out").register(registry);
+        }
+        FunctionCounter.builder("wishlist.replica.reads", primaryReads, LongAdder::sum)
+                .tags("target", "primary").description("Read-only connections handed out").register(registry);
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final LongAdder reads = new LongAdder();
+        private volatile boolean healthy;
+        private volatile long lagMillis = -1;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        // Der logges kun når tilstanden skifter, ikke ved hvert tjek
+        void markHealthy() {
+            if (!healthy) {
+                log.info("Replica {} is in use ({} ms behind primary)", name, lagMillis);
+                healthy = true;
+            }
+        }
+
+        void markUnhealthy(String reason) {
+            if (healthy) {
+                log.warn("Replica {} is not used: {}", name, reason);
+                healthy = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.services.AuthTokenSigner;
+import com.boefcity.wishlistv1.services.TokenAuthService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.FlashMapManager;
+
+import java.io.IOException;
+
+// Med auth.mode=token må intet oprette en HttpSession - heller ikke flash beskeder (se CookieFlashMapManager)
+@Configuration
+@ConditionalOnProperty(name = "auth.mode", havingValue = "token")
+public class TokenAuthConfig {
+
+    // Erstatter Spring Boots SessionFlashMapManager (den er @ConditionalOnMissingBean på navnet)
+    @Bean(name = DispatcherServlet.FLASH_MAP_MANAGER_BEAN_NAME)
+    public FlashMapManager flashMapManager(AuthTokenSigner signer, ObjectMapper objectMapper) {
+        return new CookieFlashMapManager(signer, objectMapper);
+    }
+
+    // Forlænger login-cookien for aktive brugere
+    @Bean
+    public OncePerRequestFilter authTokenRenewalFilter(TokenAuthService tokenAuthService) {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                            FilterChain chain) throws ServletException, IOException {
+                tokenAuthService.renewIfNeeded(request, response);
+                chain.doFilter(request, response);
+            }
+        };
+    }
+}
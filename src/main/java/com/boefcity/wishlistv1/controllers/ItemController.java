@@ -1,28 +1,65 @@
 package com.boefcity.wishlistv1.controllers;
 
+import com.boefcity.wishlistv1.AuthService;
 import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.LinkPreviewService;
+import com.boefcity.wishlistv1.UserNameTakenException;
 import com.boefcity.wishlistv1.UserService;
+import com.boefcity.wishlistv1.dto.ImportResult;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.dto.WishlistEvent;
 import com.boefcity.wishlistv1.entity.Item;
 import com.boefcity.wishlistv1.entity.User;
-import jakarta.servlet.http.HttpSession;
+import com.boefcity.wishlistv1.services.WishlistEventHub;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.RequestContextUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Controller
 public class ItemController {
 
     private final ItemService itemService;
     private final UserService userService;
+    private final LinkPreviewService linkPreviewService;
+    private final AuthService authService;
+    private final WishlistEventHub eventHub;
 
     @Autowired
-    public ItemController(ItemService itemService, UserService userService) {
+    public ItemController(ItemService itemService, UserService userService, LinkPreviewService linkPreviewService,
+                          AuthService authService, WishlistEventHub eventHub) {
         this.itemService = itemService;
         this.userService = userService;
+        this.linkPreviewService = linkPreviewService;
+        this.authService = authService;
+        this.eventHub = eventHub;
     }
 //Navationsmetoder
     @GetMapping("/")
@@ -44,11 +81,23 @@ public class ItemController {
         model.addAttribute("item", new Item());
         return "addForm";
     }
+    @GetMapping("/import")
+    public String displayImportForm() {
+        return "importForm";
+    }
     @GetMapping("/editItem/{id}")
     public String displayEditForm(@PathVariable int id,
+                                  HttpServletRequest request,
                                   Model model) {
 
-        Item item = itemService.findById(id)
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        //Andre brugeres items kan hverken ses eller redigeres
+        ItemView item = itemService.findViewById(id)
+                .filter(view -> view.getUserId() == userId)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid item Id: " + id));
         model.addAttribute("item", item);
         return "editForm";
@@ -63,15 +112,13 @@ public class ItemController {
     public String createUser(@ModelAttribute User user,
                              RedirectAttributes redirectAttributes) {
         try {
-            User existingUser = userService.findByUserName(user.getUserName());
-            if (existingUser != null) {
-                redirectAttributes.addFlashAttribute("message", "Username already exists.");
-                return "redirect:/register";
-            }
-
+            //saveUser tjekker selv om brugernavnet findes - se UserServiceImpl
             userService.saveUser(user);
             redirectAttributes.addFlashAttribute("message", "User registered successfully!");
             return "redirect:/login";
+        } catch (UserNameTakenException e) {
+            redirectAttributes.addFlashAttribute("message", "Username already exists.");
+            return "redirect:/register";
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("message", "An error occurred.");
             return "redirect:/register";
@@ -81,16 +128,17 @@ public class ItemController {
 
     @PostMapping("/loginUser")
     //RequestParam bruges til at kræve data fra brugeren - i dette tilfælde brugernavn og kodeord
-    //HttpSession bruges til at give brugeren en personlig udgave af app'en, hvor vi efterfølgende kan hente data fra.
+    //AuthService husker hvem brugeren er (HttpSession eller signeret cookie), så vi efterfølgende kan hente brugerens data.
     public String loginUser(@RequestParam String userName,
                             @RequestParam String password,
-                            HttpSession session,
+                            HttpServletRequest request,
+                            HttpServletResponse response,
                             RedirectAttributes redirectAttributes) {
 //Se UserServiceImpl "checkLogin"
         boolean isValidUser = userService.checkLogin(userName, password);
         if (isValidUser) {
             User user = userService.findByUserName(userName);
-            session.setAttribute("userId", user.getUserId());
+            authService.login(user.getUserId(), request, response);
             return "redirect:/items";
 
         } else {
@@ -103,11 +151,11 @@ public class ItemController {
 
     @PostMapping("/create")
     public String createItem(@ModelAttribute Item item,
-                             HttpSession session,
+                             HttpServletRequest request,
                             RedirectAttributes redirectAttributes) {
-//Henter brugerID fra session.SetAttribute i login-metoden.
+//Henter brugerID gemt af AuthService i login-metoden.
 //Se Login-metoden
-        Integer userId = (Integer) session.getAttribute("userId");
+        Integer userId = authService.currentUserId(request);
         if (userId == null) {
             return "redirect:/login";
         }
@@ -119,57 +167,276 @@ public class ItemController {
         return "redirect:/items";
     }
 
+    @PostMapping("/import")
+    //Items kan enten uploades som fil eller indsættes som tekst. Se ItemImporter for formaterne.
+    public String importItems(@RequestParam(required = false) MultipartFile file,
+                              @RequestParam(required = false) String text,
+                              @RequestParam(defaultValue = "csv") String format,
+                              HttpServletRequest request,
+                              RedirectAttributes redirectAttributes) throws IOException {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        InputStream input;
+        if (file != null && !file.isEmpty()) {
+            input = file.getInputStream();
+        } else if (text != null && !text.isBlank()) {
+            input = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        } else {
+            redirectAttributes.addFlashAttribute("message", "Choose a file or paste some items to import.");
+            return "redirect:/import";
+        }
+
+        ImportResult result;
+        try (input) {
+            result = itemService.importItems(userId, input, ItemFileFormat.fromParam(format));
+        }
+        redirectAttributes.addFlashAttribute("message", result.getImported() + " items imported.");
+        if (result.hasErrors()) {
+            redirectAttributes.addFlashAttribute("importErrors", result.getErrors());
+            return "redirect:/import";
+        }
+        return "redirect:/items";
+    }
+
     @PostMapping("/delete/{itemId}")
     public String deleteItem(@PathVariable int itemId,
-                             HttpSession session,
+                             HttpServletRequest request,
                              RedirectAttributes redirectAttributes) {
 
-        Integer userId = (Integer) session.getAttribute("userId");
+        Integer userId = authService.currentUserId(request);
         if (userId == null) {
             redirectAttributes.addFlashAttribute("message", "Please login to delete items.");
             return "redirect:/login";
         }
 
-        // Kontrollerer om item eksisterer og om den er tilknyttet en user
-        Item item = itemService.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Item not found"));
-
-        if (item.getUser().getUserId() != userId) {
+        // Ejerskabet tjekkes i selve DELETE'et - 0 slettede betyder at item'et ikke findes eller ikke er brugerens
+        if (itemService.deleteByIdsForUser(userId, List.of(itemId)) == 0) {
             redirectAttributes.addFlashAttribute("message", "Unauthorized to delete this item");
             return "redirect:/items";
         }
 
-        itemService.deleteById(itemId);
         redirectAttributes.addFlashAttribute("message", "Item deleted successfully!");
         return "redirect:/items";
     }
 
+    @PostMapping("/items/delete")
+    //Sletter de items der er valgt med checkboksene på /items
+    public String deleteItems(@RequestParam(name = "ids", required = false) List<Integer> ids,
+                              HttpServletRequest request,
+                              RedirectAttributes redirectAttributes) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            redirectAttributes.addFlashAttribute("message", "Please login to delete items.");
+            return "redirect:/login";
+        }
+
+        Set<Integer> selected = ids == null ? Set.of() : new LinkedHashSet<>(ids);
+        if (selected.isEmpty()) {
+            redirectAttributes.addFlashAttribute("message", "Select the items you want to delete.");
+            return "redirect:/items";
+        }
+        if (selected.size() > ItemService.MAX_PAGE_SIZE) {
+            redirectAttributes.addFlashAttribute("message", "Select at most " + ItemService.MAX_PAGE_SIZE + " items at a time.");
+            return "redirect:/items";
+        }
+
+        int deleted = itemService.deleteByIdsForUser(userId, selected);
+        if (deleted == selected.size()) {
+            redirectAttributes.addFlashAttribute("message", deleted + " items deleted successfully!");
+        } else {
+            redirectAttributes.addFlashAttribute("message", deleted + " of " + selected.size()
+                    + " items deleted. The rest were not found or are not yours.");
+        }
+        return "redirect:/items";
+    }
+
     @PostMapping("/updateItem/{id}")
     public String updateItem(@PathVariable int id,
                              @ModelAttribute Item item,
-                             HttpSession session,
+                             HttpServletRequest request,
+                             HttpServletResponse response,
+                             Model model,
                              RedirectAttributes redirectAttributes) {
 
-        Integer userId = (Integer) session.getAttribute("userId");
+        Integer userId = authService.currentUserId(request);
         if (userId == null) {
             return "redirect:/login";
         }
 
-        itemService.update(id, item);
+        try {
+            //item.version er den version formularen blev åbnet med - se editForm.html
+            itemService.update(userId, id, item);
+        } catch (ItemUpdateConflictException e) {
+            //En anden har gemt item'et imens. Brugerens ændringer vises igen sammen med den gemte udgave,
+            //og et nyt submit (med den nye version) overskriver den bevidst.
+            item.setId(id);
+            item.setVersion(e.getCurrent().getVersion());
+            model.addAttribute("item", item);
+            model.addAttribute("current", e.getCurrent());
+            response.setStatus(HttpStatus.CONFLICT.value());
+            return "editForm";
+        } catch (EntityNotFoundException e) {
+            redirectAttributes.addFlashAttribute("message", "Item not found.");
+            return "redirect:/items";
+        }
         redirectAttributes.addFlashAttribute("message", "Item updated successfully!");
         return "redirect:/items";
     }
+    @PostMapping("/items/{id}/move")
+    //Flytter item'et lige efter after eller lige før before (item id'er) - uden nogen af dem øverst.
+    //pageAfter/pageBefore er cursoren for den side brugeren stod på, så vi sender dem tilbage til samme side.
+    public String moveItem(@PathVariable int id,
+                           @RequestParam(required = false) Integer after,
+                           @RequestParam(required = false) Integer before,
+                           @RequestParam(required = false) Integer pageAfter,
+                           @RequestParam(required = false) Integer pageBefore,
+                           @RequestParam(defaultValue = "" + ItemService.DEFAULT_PAGE_SIZE) int size,
+                           HttpServletRequest request,
+                           RedirectAttributes redirectAttributes) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+        if (after != null && before != null) {
+            redirectAttributes.addFlashAttribute("message", "Move the item either after or before another item.");
+            return "redirect:/items";
+        }
+
+        try {
+            itemService.move(userId, id, after, before);
+        } catch (EntityNotFoundException e) {
+            redirectAttributes.addFlashAttribute("message", "Item not found.");
+            return "redirect:/items";
+        }
+        if (pageAfter != null) {
+            redirectAttributes.addAttribute("after", pageAfter);
+        } else if (pageBefore != null) {
+            redirectAttributes.addAttribute("before", pageBefore);
+        }
+        if (size != ItemService.DEFAULT_PAGE_SIZE) {
+            redirectAttributes.addAttribute("size", size);
+        }
+        return "redirect:/items";
+    }
+
+    @GetMapping("/items/export")
+    //Svaret skrives mens rækkerne læses fra databasen (StreamingResponseBody kører på en anden tråd)
+    public ResponseEntity<StreamingResponseBody> exportItems(@RequestParam(defaultValue = "csv") String format,
+                                                             HttpServletRequest request) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create("/login")).build();
+        }
+
+        ItemFileFormat fileFormat = ItemFileFormat.fromParam(format);
+        StreamingResponseBody body = output -> itemService.exportItems(userId, fileFormat, output);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("wishlist." + fileFormat.getFileExtension()).build().toString())
+                .body(body);
+    }
+
+    @GetMapping(value = "/items/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    //Live ændringer af brugerens wishlist som Server-Sent Events (se WishlistEventHub og scriptet i items.html).
+    //Forbindelsen holdes åben uden at holde en request tråd - events skrives fra hub'ens egne tråde.
+    public ResponseEntity<SseEmitter> itemEvents(HttpServletRequest request) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        SseEmitter emitter = new SseEmitter(eventHub.getTimeout().toMillis());
+        WishlistEventHub.Subscription subscription = eventHub.subscribe(userId, new WishlistEventHub.Sink() {
+            @Override
+            public void send(WishlistEvent event) throws IOException {
+                emitter.send(SseEmitter.event().id(Long.toString(event.getId())).name(event.getType())
+                        .data(event, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        if (subscription == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "60").build();
+        }
+        emitter.onCompletion(subscription::unsubscribe);
+        emitter.onTimeout(subscription::unsubscribe);
+        emitter.onError(e -> subscription.unsubscribe());
+        //X-Accel-Buffering: nginx må ikke samle events op før de sendes videre
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    @GetMapping("/items/search")
+    public String searchItems(@RequestParam(defaultValue = "") String q,
+                              HttpServletRequest request,
+                              Model model) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        List<ItemSearchDocument> hits = itemService.searchItems(userId, q, ItemService.MAX_PAGE_SIZE);
+        model.addAttribute("wishlist", hits);
+        model.addAttribute("previews", linkPreviewService.previewsFor(hits.stream().map(ItemSearchDocument::getLink).toList()));
+        model.addAttribute("query", q);
+        return "items";
+    }
+
     @GetMapping("/items")
-    public String displayItems(HttpSession session,
+    //after/before er cursorer (item id'er) fra forrige side - se ItemService "findPageByUserUserId"
+    public String displayItems(@RequestParam(required = false) Integer after,
+                               @RequestParam(required = false) Integer before,
+                               @RequestParam(defaultValue = "" + ItemService.DEFAULT_PAGE_SIZE) int size,
+                               HttpServletRequest request,
+                               HttpServletResponse response,
+                               WebRequest webRequest,
                                Model model) {
 
-        Integer userId = (Integer) session.getAttribute("userId");
+        Integer userId = authService.currentUserId(request);
         if (userId == null) {
             return "redirect:/login";
         }
 
-        List<Item> wishlist = itemService.findByUserUserId(userId);
-        model.addAttribute("wishlist", wishlist);
+        //Er wishlisten uændret siden browseren sidst hentede siden, svares 304 uden at hente items eller rendere.
+        //Siden er personlig, så den må kun caches af browseren og skal altid tjekkes (no-cache).
+        //En flash besked vises kun én gang - de sider renderes altid og får ingen ETag.
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        String etag = "W/\"" + userId + "-" + itemService.wishlistVersion(userId) + "\"";
+        boolean hasFlash = RequestContextUtils.getInputFlashMap(request) != null;
+        if (!hasFlash && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        ItemPage page = itemService.findPageByUserUserId(userId, after, before, size);
+        List<String> links = page.getItems().stream().map(ItemView::getLink).toList();
+        model.addAttribute("wishlist", page.getItems());
+        model.addAttribute("page", page);
+        //Previews der ikke er hentet endnu hentes i baggrunden - se LinkPreviewServiceImpl
+        model.addAttribute("previews", linkPreviewService.previewsFor(links));
+        if (!hasFlash && linkPreviewService.isFetching(links)) {
+            //Siden ændrer sig når preview'et er hentet, uden at wishlisten får en ny version
+            response.setHeader(HttpHeaders.ETAG, "W/\"" + userId + "-pending\"");
+        }
         return "items";
     }
 
@@ -0,0 +1,106 @@
+package com.boefcity.wishlistv1.controllers;
+
+import com.boefcity.wishlistv1.AuthService;
+import com.boefcity.wishlistv1.ShareService;
+import com.boefcity.wishlistv1.dto.SharedPage;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+@Controller
+public class ShareController {
+
+    private final ShareService shareService;
+    private final AuthService authService;
+
+    public ShareController(ShareService shareService, AuthService authService) {
+        this.shareService = shareService;
+        this.authService = authService;
+    }
+
+    @GetMapping("/share")
+    public String displayShareForm(HttpServletRequest request, Model model) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        String token = shareService.findToken(userId);
+        if (token != null) {
+            model.addAttribute("shareLink", ServletUriComponentsBuilder.fromContextPath(request)
+                    .path("/shared/{token}").buildAndExpand(token).toUriString());
+        }
+        return "shareForm";
+    }
+
+    @PostMapping("/share")
+    //Opretter et link - eller et nyt, så det gamle holder op med at virke
+    public String createShareLink(HttpServletRequest request,
+                                  RedirectAttributes redirectAttributes) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        boolean replaced = shareService.findToken(userId) != null;
+        shareService.createToken(userId);
+        redirectAttributes.addFlashAttribute("message", replaced
+                ? "New link created. The old link no longer works."
+                : "Link created!");
+        return "redirect:/share";
+    }
+
+    @PostMapping("/share/stop")
+    public String stopSharing(HttpServletRequest request,
+                              RedirectAttributes redirectAttributes) {
+
+        Integer userId = authService.currentUserId(request);
+        if (userId == null) {
+            return "redirect:/login";
+        }
+
+        shareService.stopSharing(userId);
+        redirectAttributes.addFlashAttribute("message", "Your wishlist is no longer shared.");
+        return "redirect:/share";
+    }
+
+    @GetMapping("/shared/{token}")
+    //Kræver ikke login. HTML'en kommer færdigrenderet fra ShareService, så den sendes direkte uden om view-laget.
+    public ResponseEntity<String> displaySharedWishlist(@PathVariable String token,
+                                                        @RequestParam(required = false) Integer after) {
+
+        Optional<SharedPage> found = shareService.findPage(token, after);
+        if (found.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        SharedPage page = found.get();
+
+        //Siden er ens for alle med linket, men skal altid tjekkes, da wishlisten kan ændres og linket stoppes.
+        //Med en ETag svarer Spring selv 304 når If-None-Match matcher.
+        //Søgemaskiner skal ikke indeksere siden, og token'et må ikke sendes videre som Referer.
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Robots-Tag", "noindex")
+                .header("Referrer-Policy", "no-referrer")
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8));
+        if (page.isComplete()) {
+            response.eTag("W/\"" + page.getVersion() + "\"");
+        }
+        return response.body(page.getHtml());
+    }
+}
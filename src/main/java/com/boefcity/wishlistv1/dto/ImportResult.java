@@ -0,0 +1,30 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// Resultatet af en bulk import: antal oprettede items og de rækker der blev sprunget over.
+@Getter
+@AllArgsConstructor
+public class ImportResult {
+    private final int imported;
+    private final List<RowError> errors;
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RowError {
+        private final int row;
+        private final String message;
+
+        @Override
+        public String toString() {
+            return "Row " + row + ": " + message;
+        }
+    }
+}
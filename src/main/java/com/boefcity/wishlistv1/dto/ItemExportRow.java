@@ -0,0 +1,15 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Kun de kolonner der eksporteres. Hentes med en JPQL constructor expression (se ItemRepository),
+// så rækkerne ikke er managed entities og ikke hober sig op i persistence context under en lang eksport.
+@Getter
+@AllArgsConstructor
+public class ItemExportRow {
+    private final int id;
+    private final String name;
+    private final String description;
+    private final String link;
+}
@@ -0,0 +1,28 @@
+package com.boefcity.wishlistv1.dto;
+
+// Filformater til import og eksport af items.
+// JSON importeres både som et array af objekter og som ét objekt pr. linje, og eksporteres som NDJSON.
+public enum ItemFileFormat {
+    CSV("text/csv", "csv"),
+    JSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String fileExtension;
+
+    ItemFileFormat(String contentType, String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public static ItemFileFormat fromParam(String format) {
+        return "json".equalsIgnoreCase(format) || "ndjson".equalsIgnoreCase(format) ? JSON : CSV;
+    }
+}
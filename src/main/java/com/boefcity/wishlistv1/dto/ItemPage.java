@@ -0,0 +1,25 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// En side af en brugers wishlist hentet med keyset pagination (seek fra et items rank og id).
+// Cursorerne er id'et på hhv. sidste og første item på siden, og er null hvis der ikke er flere sider i den retning.
+@Getter
+@AllArgsConstructor
+public class ItemPage {
+    private final List<ItemView> items;
+    private final Integer nextCursor;
+    private final Integer previousCursor;
+    private final int size;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Det ItemSearchIndex gemmer om et item, og det en søgning returnerer.
+// Har de felter items.html bruger, så søgeresultater kan vises uden at gå til databasen.
+@Getter
+@AllArgsConstructor
+public class ItemSearchDocument {
+    private final int id;
+    private final int userId;
+    private final String name;
+    private final String description;
+    private final String link;
+}
@@ -0,0 +1,18 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Read-only udgave af et item til visning (items.html og editForm.html).
+// Hentes med en projection direkte fra items tabellen, så User aldrig loades - userId er blot fremmednøglen.
+// Kan deles sikkert mellem requests, og er derfor også det WishlistCache gemmer i siderne.
+@Getter
+@AllArgsConstructor
+public class ItemView {
+    private final int id;
+    private final int userId;
+    private final String name;
+    private final String description;
+    private final String link;
+    private final int version;
+}
@@ -0,0 +1,15 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// En renderet side af en delt wishlist (se ShareServiceImpl).
+// version er wishlistens version da siden blev renderet. complete er false mens link previews stadig hentes -
+// så ændrer siden sig uden at wishlisten gør, og den hverken caches eller får en ETag.
+@Getter
+@AllArgsConstructor
+public class SharedPage {
+    private final String html;
+    private final String version;
+    private final boolean complete;
+}
@@ -0,0 +1,18 @@
+package com.boefcity.wishlistv1.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// En ændring af en wishlist som den sendes til browseren over GET /items/events (se WishlistEventHub).
+// type er created, updated, deleted, imported eller moved. Felterne er kun sat ved created og updated,
+// og itemId er null ved imported - så må siden hentes forfra.
+@Getter
+@AllArgsConstructor
+public class WishlistEvent {
+    private final long id;
+    private final String type;
+    private final Integer itemId;
+    private final String name;
+    private final String description;
+    private final String link;
+}
@@ -21,6 +21,14 @@ public class Item {
     private String description;
     private String link;
 
+    @Version // Optimistic locking: tælles op ved hver ændring, så samtidige ændringer ikke overskriver hinanden
+    private int version;
+
+    // Placering i brugerens wishlist (lavest øverst). Der er huller mellem værdierne, så et item kan flyttes
+    // ved kun at ændre dets egen rank - se ItemRankRebalancer. "rank" er et reserveret ord i MySQL.
+    @Column(name = "item_rank", nullable = false)
+    private long rank;
+
     @ManyToOne // Etablerer et Many-To-One forhold til User entity
     @JoinColumn(name = "user_id") // Mapper til 'user_id' kolonnen i databasen
     private User user; // Repræsenterer brugeren, der er forbundet med denne item
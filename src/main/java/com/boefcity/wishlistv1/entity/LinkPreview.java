@@ -0,0 +1,36 @@
+package com.boefcity.wishlistv1.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Se Item class for annotations comments
+// Titel og billede hentet fra et items link. Gemmes så de ikke skal hentes igen ved hver visning.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name="link_previews")
+public class LinkPreview {
+    @Id // SHA-256 af url'en, da url'er kan være for lange til en primærnøgle
+    @Column(length = 64)
+    private String urlHash;
+
+    @Column(nullable = false, length = 2048)
+    private String url;
+
+    @Column(length = 512)
+    private String title;
+
+    @Column(length = 2048)
+    private String imageUrl;
+
+    // false hvis siden ikke kunne hentes - så prøver vi først igen efter linkpreview.failure-ttl
+    private boolean available;
+
+    @Column(nullable = false)
+    private Instant fetchedAt;
+}
@@ -1,5 +1,6 @@
 package com.boefcity.wishlistv1.entity;
 
+import com.boefcity.wishlistv1.services.UserBloomFilterListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,6 +14,7 @@ import java.util.List;
 @NoArgsConstructor
 @Entity
 @Table(name="users")
+@EntityListeners(UserBloomFilterListener.class) // Holder UsernameBloomFilter opdateret
 public class User {
 
     @Id // Markerer userId som PK
@@ -31,6 +33,11 @@ public class User {
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Item> items;
 
+    // Hemmeligt token til wishlistens offentlige link (/shared/{token}). null når wishlisten ikke er delt.
+    // Se ShareServiceImpl
+    @Column(unique = true, length = 43)
+    private String shareToken;
+
     public User(int userId, String userName, String userPassword, List<Item> items) {
         this.userId = userId;
         this.userName = userName;
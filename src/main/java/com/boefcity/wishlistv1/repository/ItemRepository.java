@@ -1,13 +1,116 @@
 package com.boefcity.wishlistv1.repository;
 
+import com.boefcity.wishlistv1.dto.ItemExportRow;
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.dto.ItemView;
 import com.boefcity.wishlistv1.entity.Item;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ItemRepository extends JpaRepository<Item, Integer> {
+    // Vælger kun de kolonner der vises. i.user.userId er fremmednøglen, så der hverken joines eller loades en User.
+    String ITEM_VIEW = "select new com.boefcity.wishlistv1.dto.ItemView(i.id, i.user.userId, i.name, i.description, i.link, i.version) " +
+            "from Item i ";
+
     List<Item> findByUserUserId(int id);
 
+    // Brugerens egen rækkefølge: efter rank (se Item.rank), og efter id hvis to items skulle have samme rank.
+    // Keyset pagination: søger fra cursor-item'ets (rank, id) i stedet for OFFSET, så prisen pr. side er den samme
+    // uanset hvor langt man er. Indexet items (user_id, item_rank, id) giver rækkerne i rækkefølge.
+    @Query(ITEM_VIEW + "where i.user.userId = :userId order by i.rank asc, i.id asc")
+    List<ItemView> findViewsByUserId(@Param("userId") int userId, Limit limit);
+
+    @Query(ITEM_VIEW + "where i.user.userId = :userId and (i.rank > :rank or (i.rank = :rank and i.id > :afterId)) " +
+            "order by i.rank asc, i.id asc")
+    List<ItemView> findViewsByUserIdAfter(@Param("userId") int userId, @Param("rank") long rank,
+                                          @Param("afterId") int afterId, Limit limit);
+
+    @Query(ITEM_VIEW + "where i.user.userId = :userId and (i.rank < :rank or (i.rank = :rank and i.id < :beforeId)) " +
+            "order by i.rank desc, i.id desc")
+    List<ItemView> findViewsByUserIdBefore(@Param("userId") int userId, @Param("rank") long rank,
+                                           @Param("beforeId") int beforeId, Limit limit);
+
+    // Cursorens rank - tom hvis item'et ikke findes eller ikke er brugerens
+    @Query("select i.rank from Item i where i.id = :id and i.user.userId = :userId")
+    Optional<Long> findRankByIdAndUserId(@Param("id") int id, @Param("userId") int userId);
+
+    // Nabo-ranks til ItemService.move. Item'et der flyttes (excludedId) tæller ikke med.
+    @Query("select i.rank from Item i where i.user.userId = :userId and i.id <> :excludedId " +
+            "and (i.rank > :rank or (i.rank = :rank and i.id > :id)) order by i.rank asc, i.id asc")
+    List<Long> findRanksAfter(@Param("userId") int userId, @Param("rank") long rank, @Param("id") int id,
+                              @Param("excludedId") int excludedId, Limit limit);
+
+    @Query("select i.rank from Item i where i.user.userId = :userId and i.id <> :excludedId " +
+            "and (i.rank < :rank or (i.rank = :rank and i.id < :id)) order by i.rank desc, i.id desc")
+    List<Long> findRanksBefore(@Param("userId") int userId, @Param("rank") long rank, @Param("id") int id,
+                               @Param("excludedId") int excludedId, Limit limit);
+
+    @Query("select i.rank from Item i where i.user.userId = :userId and i.id <> :excludedId order by i.rank asc, i.id asc")
+    List<Long> findFirstRanks(@Param("userId") int userId, @Param("excludedId") int excludedId, Limit limit);
+
+    // null hvis brugeren ingen items har. Læses fra enden af indexet.
+    @Query("select max(i.rank) from Item i where i.user.userId = :userId")
+    Long findMaxRankByUserId(@Param("userId") int userId);
+
+    // Til ItemRankRebalancer: brugerens item id'er i den rækkefølge de vises
+    @Query("select i.id from Item i where i.user.userId = :userId order by i.rank asc, i.id asc")
+    List<Integer> findIdsByUserIdInRankOrder(@Param("userId") int userId);
+
+    // Flytter ét item uden at røre version - en flytning er ikke en ændring af item'et, og må ikke give
+    // en konflikt for den der har item'et åbent i editForm. Returnerer 0 hvis item'et ikke er brugerens.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Item i set i.rank = :rank where i.id = :id and i.user.userId = :userId")
+    int updateRank(@Param("id") int id, @Param("userId") int userId, @Param("rank") long rank);
+
+    @Query(ITEM_VIEW + "where i.id = :id")
+    Optional<ItemView> findViewById(@Param("id") int id);
+
+    // De af ids der er brugerens - så der kun sendes events for items der faktisk slettes
+    @Query("select i.id from Item i where i.id in :ids and i.user.userId = :userId")
+    List<Integer> findIdsByIdInAndUserId(@Param("ids") Collection<Integer> ids, @Param("userId") int userId);
+
+    // Sletter kun de items brugeren ejer, i ét statement uden at loade dem først. Returnerer antal slettede rækker.
+    // Persistence context ryddes bagefter, da den ellers kunne indeholde de slettede items.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Item i where i.id in :ids and i.user.userId = :userId")
+    int deleteByIdInAndUserId(@Param("ids") Collection<Integer> ids, @Param("userId") int userId);
+
+    // Optimistic locking i ét statement uden at læse item'et først: opdaterer kun hvis item'et er brugerens
+    // og ingen har gemt det siden version blev læst. Returnerer 0 hvis ikke.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Item i set i.name = :name, i.description = :description, i.link = :link, i.version = i.version + 1 " +
+            "where i.id = :id and i.user.userId = :userId and i.version = :version")
+    int updateIfCurrent(@Param("id") int id, @Param("userId") int userId, @Param("version") int version,
+                        @Param("name") String name, @Param("description") String description, @Param("link") String link);
+
+    // Til eksport: rækkerne læses fra en åben ResultSet i stedet for at blive samlet i en liste.
+    // Skal kaldes i en transaktion og streamen skal lukkes. MySQL bruger kun fetch size med useCursorFetch=true i DB_URL.
+    @Query("select new com.boefcity.wishlistv1.dto.ItemExportRow(i.id, i.name, i.description, i.link) " +
+            "from Item i where i.user.userId = :userId order by i.rank, i.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<ItemExportRow> streamExportRowsByUserId(@Param("userId") int userId);
+
+    // Til ItemSearchIndex: alle items som søgedokumenter uden at loade entities
+    @Query("select new com.boefcity.wishlistv1.dto.ItemSearchDocument(i.id, i.user.userId, i.name, i.description, i.link) " +
+            "from Item i")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<ItemSearchDocument> streamSearchDocuments();
+
+    @Query("select new com.boefcity.wishlistv1.dto.ItemSearchDocument(i.id, i.user.userId, i.name, i.description, i.link) " +
+            "from Item i where i.user.userId = :userId")
+    List<ItemSearchDocument> findSearchDocumentsByUserId(@Param("userId") int userId);
+
 }
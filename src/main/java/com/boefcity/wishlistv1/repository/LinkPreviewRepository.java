@@ -0,0 +1,9 @@
+package com.boefcity.wishlistv1.repository;
+
+import com.boefcity.wishlistv1.entity.LinkPreview;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LinkPreviewRepository extends JpaRepository<LinkPreview, String> {
+}
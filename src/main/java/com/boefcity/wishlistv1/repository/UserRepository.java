@@ -1,10 +1,57 @@
 package com.boefcity.wishlistv1.repository;
 
 import com.boefcity.wishlistv1.entity.User;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Integer> {
     User findByUserName(String userName);
+
+    // Kun brugernavnene - bruges til at fylde UsernameBloomFilter ved opstart
+    @Query("select u.userName from User u")
+    Stream<String> streamAllUserNames();
+
+    @Query("select max(u.userId) from User u")
+    Integer findMaxUserId();
+
+    // Brugere oprettet efter after (id) - bruges til at holde UsernameBloomFilter opdateret med brugere
+    // der er oprettet på andre instanser. Se UserServiceImpl.
+    @Query("select u.userId as userId, u.userName as userName from User u where u.userId > :after order by u.userId")
+    List<UserNameRow> findUserNamesAfter(int after, Limit limit);
+
+    interface UserNameRow {
+        int getUserId();
+
+        String getUserName();
+    }
+
+    // Delte wishlists - se ShareServiceImpl. Kun de kolonner der skal bruges, uden at loade User.
+    @Query("select u.userId from User u where u.shareToken = :token")
+    Optional<Integer> findUserIdByShareToken(String token);
+
+    @Query("select u.shareToken from User u where u.userId = :userId")
+    String findShareTokenByUserId(int userId);
+
+    @Query("select u.userName from User u where u.userId = :userId")
+    Optional<String> findUserNameByUserId(int userId);
+
+    // SELECT ... FOR UPDATE på brugerens række, så flytninger og rebalancering af brugerens items
+    // ikke kører samtidig - se ItemRankRebalancer. Låsen holdes til transaktionen slutter.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u.userId from User u where u.userId = :userId")
+    Optional<Integer> lockByUserId(int userId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update User u set u.shareToken = :token where u.userId = :userId")
+    int updateShareToken(int userId, String token);
 }
@@ -0,0 +1,98 @@
+package com.boefcity.wishlistv1.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// HMAC-SHA256 signering af cookie-værdier: "<payload>.<signatur>".
+// Signaturen dækker også hvad værdien er til (Purpose), så en signeret flash-cookie aldrig kan bruges som auth-cookie
+// eller omvendt - selvom de deler nøgle. Formålet står ikke i cookien, det skal kalderen angive ved verify.
+// Alle instanser skal have samme auth.token.secret, ellers kan de ikke læse hinandens cookies.
+@Component
+@ConditionalOnProperty(name = "auth.mode", havingValue = "token")
+public class AuthTokenSigner {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthTokenSigner.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+
+    public enum Purpose {
+        AUTH("auth:"), FLASH("flash:");
+
+        private final String prefix;
+
+        Purpose(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private final Mac prototype;
+
+    public AuthTokenSigner(@Value("${auth.token.secret:}") String secret) {
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            // Uden en fælles nøgle virker tokens kun på denne instans og kun indtil den genstartes
+            log.warn("auth.token.secret is not set - using a random key, tokens will not survive a restart");
+            key = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+            if (key.length < MIN_SECRET_BYTES) {
+                log.warn("auth.token.secret is shorter than {} bytes", MIN_SECRET_BYTES);
+            }
+        }
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC is not available", e);
+        }
+    }
+
+    public String sign(Purpose purpose, String payload) {
+        return payload + "." + signature(purpose, payload);
+    }
+
+    // Returnerer payload hvis signaturen passer og værdien er signeret til purpose, ellers null
+    public String verify(Purpose purpose, String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        byte[] expected = signature(purpose, payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(dot + 1).getBytes(StandardCharsets.US_ASCII);
+        // Konstant tid, så signaturen ikke kan gættes byte for byte
+        return MessageDigest.isEqual(expected, actual) ? payload : null;
+    }
+
+    private String signature(Purpose purpose, String payload) {
+        return base64(mac().doFinal((purpose.prefix + payload).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Mac er ikke trådsikker - en klon af den initialiserede instans er billigere end Mac.getInstance
+    private Mac mac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,22 @@
+package com.boefcity.wishlistv1.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Publiceres af ItemServiceImpl når en brugers items ændres. Lyttere bruger @TransactionalEventListener,
+// så de først reagerer når ændringen er committed.
+// Ved IMPORTED kendes de enkelte items ikke (se ItemImporter), så itemId og felterne er null.
+// Ved MOVED er kun rækkefølgen ændret, så felterne er null.
+@Getter
+@AllArgsConstructor
+public class ItemChangedEvent {
+
+    public enum Type { CREATED, UPDATED, DELETED, IMPORTED, MOVED }
+
+    private final Type type;
+    private final int userId;
+    private final Integer itemId;
+    private final String name;
+    private final String description;
+    private final String link;
+}
@@ -0,0 +1,89 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.ItemExportRow;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Skriver items som CSV eller NDJSON direkte til response-streamen, én række ad gangen.
+// Første række flushes med det samme, så klienten får de første bytes uden at vente på hele listen.
+@Component
+public class ItemExporter {
+
+    private final ObjectMapper objectMapper;
+
+    public ItemExporter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public void write(Stream<ItemExportRow> rows, ItemFileFormat format, OutputStream out) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (format == ItemFileFormat.CSV) {
+                writer.write("name,description,link\r\n");
+            }
+            boolean first = true;
+            Iterator<ItemExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                ItemExportRow row = iterator.next();
+                if (format == ItemFileFormat.CSV) {
+                    writeCsv(writer, row);
+                } else {
+                    writeJson(writer, row);
+                }
+                if (first) {
+                    writer.flush();
+                    first = false;
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCsv(Writer writer, ItemExportRow row) throws IOException {
+        writer.write(csvField(row.getName()));
+        writer.write(',');
+        writer.write(csvField(row.getDescription()));
+        writer.write(',');
+        writer.write(csvField(row.getLink()));
+        writer.write("\r\n");
+    }
+
+    private void writeJson(Writer writer, ItemExportRow row) throws IOException {
+        // Generatoren må ikke lukke writeren, den ejes af response'en
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeNumberField("id", row.getId());
+        generator.writeStringField("name", row.getName());
+        generator.writeStringField("description", row.getDescription());
+        generator.writeStringField("link", row.getLink());
+        generator.writeEndObject();
+        generator.close();
+        writer.write('\n');
+    }
+
+    // RFC 4180 - samme format som ItemImporter læser
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
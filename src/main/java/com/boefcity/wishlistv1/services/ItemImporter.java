@@ -0,0 +1,223 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.ImportResult;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Læser items fra CSV eller JSON én række ad gangen og indsætter dem med JDBC batch inserts.
+// Item.id bruger IDENTITY, så Hibernate kan ikke batche inserts - derfor går vi uden om JPA her.
+// Transaktion og cache-invalidering håndteres af ItemServiceImpl.importItems.
+@Component
+public class ItemImporter {
+
+    private static final String INSERT_SQL =
+            "insert into items (name, description, link, user_id, item_rank, version) values (?, ?, ?, ?, ?, 0)";
+    private static final String MAX_RANK_SQL = "select max(item_rank) from items where user_id = ?";
+    // Standardlængden for en String kolonne oprettet af Hibernate
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxRows;
+
+    public ItemImporter(JdbcTemplate jdbcTemplate,
+                        ObjectMapper objectMapper,
+                        @Value("${wishlist.import.batch-size:100}") int batchSize,
+                        @Value("${wishlist.import.max-rows:5000}") int maxRows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRows = maxRows;
+    }
+
+    public ImportResult importItems(int userId, InputStream input, ItemFileFormat format) {
+        Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        BatchWriter writer = new BatchWriter(userId);
+        try {
+            if (format == ItemFileFormat.JSON) {
+                readJson(reader, writer);
+            } else {
+                readCsv(reader, writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.flush();
+        return new ImportResult(writer.imported, writer.errors);
+    }
+
+    private void readCsv(Reader reader, BatchWriter writer) throws IOException {
+        List<String> record = readCsvRecord(reader);
+        // En header-linje springes over
+        if (record != null && !record.isEmpty() && "name".equalsIgnoreCase(record.get(0).trim())) {
+            record = readCsvRecord(reader);
+        }
+        int row = 0;
+        while (record != null && writer.hasRoom()) {
+            row++;
+            if (!(record.size() == 1 && record.get(0).isBlank())) { // Tomme linjer ignoreres
+                ImportRow importRow = new ImportRow();
+                importRow.setName(record.get(0));
+                importRow.setDescription(record.size() > 1 ? record.get(1) : null);
+                importRow.setLink(record.size() > 2 ? record.get(2) : null);
+                writer.add(row, importRow);
+            }
+            record = readCsvRecord(reader);
+        }
+    }
+
+    private void readJson(Reader reader, BatchWriter writer) throws IOException {
+        // MappingIterator læser både et JSON array og NDJSON uden at indlæse hele filen
+        int row = 0;
+        try (MappingIterator<ImportRow> rows = objectMapper.readerFor(ImportRow.class).readValues(reader)) {
+            while (rows.hasNextValue() && writer.hasRoom()) {
+                row++;
+                writer.add(row, rows.nextValue());
+            }
+        } catch (IOException | RuntimeJsonMappingException e) {
+            // Ugyldig JSON kan vi ikke fortsætte efter - det der allerede er læst bliver stadig importeret
+            writer.errors.add(new ImportResult.RowError(row + 1, "Invalid JSON, import stopped here"));
+        }
+    }
+
+    // Læser én CSV record (RFC 4180: felter i anførselstegn kan indeholde komma, linjeskift og "").
+    // Returnerer null ved slutningen af input.
+    static List<String> readCsvRecord(Reader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String validate(ImportRow row) {
+        if (row == null || row.getName() == null || row.getName().isBlank()) {
+            return "Name is required";
+        }
+        if (row.getName().length() > MAX_COLUMN_LENGTH) {
+            return "Name is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        if (row.getDescription() != null && row.getDescription().length() > MAX_COLUMN_LENGTH) {
+            return "Description is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        if (row.getLink() != null && row.getLink().length() > MAX_COLUMN_LENGTH) {
+            return "Link is longer than " + MAX_COLUMN_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // Samler gyldige rækker og sender dem til databasen batchSize ad gangen
+    private class BatchWriter {
+        private final int userId;
+        private final List<Object[]> batch = new ArrayList<>();
+        private final List<ImportResult.RowError> errors = new ArrayList<>();
+        private int imported;
+        private int rows;
+        private boolean limitReported;
+        private long rank;
+
+        BatchWriter(int userId) {
+            this.userId = userId;
+            // De importerede items kommer nederst i filens rækkefølge - se ItemRankRebalancer
+            Long last = jdbcTemplate.queryForObject(MAX_RANK_SQL, Long.class, userId);
+            this.rank = last != null ? last : -ItemRankRebalancer.GAP;
+        }
+
+        boolean hasRoom() {
+            if (rows < maxRows) {
+                return true;
+            }
+            if (!limitReported) {
+                errors.add(new ImportResult.RowError(rows + 1, "Import is limited to " + maxRows + " rows"));
+                limitReported = true;
+            }
+            return false;
+        }
+
+        void add(int row, ImportRow importRow) {
+            rows++;
+            String error = validate(importRow);
+            if (error != null) {
+                errors.add(new ImportResult.RowError(row, error));
+                return;
+            }
+            batch.add(new Object[]{importRow.getName().trim(), emptyToNull(importRow.getDescription()),
+                    emptyToNull(importRow.getLink()), userId, rank += ItemRankRebalancer.GAP});
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+            imported += batch.size();
+            batch.clear();
+        }
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class ImportRow {
+        private String name;
+        private String description;
+        private String link;
+    }
+}
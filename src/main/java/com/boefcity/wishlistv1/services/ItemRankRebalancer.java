@@ -0,0 +1,140 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Items har en rank med huller imellem (GAP). Et nyt item får GAP mere end brugerens sidste, og et flyttet item
+// får en rank midt mellem sine nye naboer (se ItemServiceImpl.move) - så en flytning skriver kun én række.
+// Hvert træk ind i samme hul halverer det. Er et hul under MIN_GAP efter en flytning, nummereres brugerens items
+// om i baggrunden efter commit. Er hullet helt brugt op, sker det med det samme i flytningens egen transaktion.
+// Omnummereringen beholder den højeste rank, så items der oprettes imens (max + GAP) stadig havner sidst.
+// Flytninger og omnummerering låser brugerens række (UserRepository.lockByUserId), så de ikke ser hinandens halve arbejde.
+@Component
+public class ItemRankRebalancer implements MeterBinder {
+
+    public static final long GAP = 1L << 16;
+    // Svarer til 10 flytninger ind i samme hul
+    static final long MIN_GAP = GAP >> 10;
+
+    private static final Logger log = LoggerFactory.getLogger(ItemRankRebalancer.class);
+    private static final String UPDATE_SQL = "update items set item_rank = ? where id = ? and user_id = ?";
+
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final WishlistCache wishlistCache;
+    private final TaskExecutor taskExecutor;
+    // Brugere der allerede venter på en omnummerering i baggrunden
+    private final Set<Integer> scheduled = ConcurrentHashMap.newKeySet();
+    private final LongAdder rebalances = new LongAdder();
+
+    public ItemRankRebalancer(ItemRepository itemRepository,
+                              UserRepository userRepository,
+                              JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              WishlistCache wishlistCache,
+                              @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                              TaskExecutor taskExecutor) {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.wishlistCache = wishlistCache;
+        this.taskExecutor = taskExecutor;
+    }
+
+    // Låser brugerens items til den igangværende transaktion slutter
+    public void lock(int userId) {
+        userRepository.lockByUserId(userId);
+    }
+
+    // Omnummererer brugerens items i den igangværende transaktion (eller en ny). Returnerer antal items.
+    public int rebalance(int userId) {
+        Integer count = transactionTemplate.execute(status -> {
+            lock(userId);
+            List<Integer> ids = itemRepository.findIdsByUserIdInRankOrder(userId);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            long rank = itemRepository.findMaxRankByUserId(userId) - (ids.size() - 1) * GAP;
+            List<Object[]> batch = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                batch.add(new Object[]{rank, id, userId});
+                rank += GAP;
+            }
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+            wishlistCache.evictItemsAfterCommit(userId, ids);
+            return ids.size();
+        });
+        rebalances.increment();
+        return count != null ? count : 0;
+    }
+
+    // Omnummererer brugerens items i baggrunden når den igangværende transaktion er committed.
+    // Er brugeren allerede planlagt, sker der ikke mere. Ruller transaktionen tilbage, droppes det.
+    public void rebalanceLater(int userId) {
+        if (!scheduled.add(userId)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    submit(userId);
+                } else {
+                    scheduled.remove(userId);
+                }
+            }
+        });
+    }
+
+    private void submit(int userId) {
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    rebalance(userId);
+                } catch (RuntimeException e) {
+                    // Flytninger virker stadig - den næste der mangler plads omnummererer selv
+                    log.warn("Could not rebalance item ranks for user {}", userId, e);
+                } finally {
+                    scheduled.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduled.remove(userId); // Lukker ned
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("wishlist.rank.rebalances", rebalances, LongAdder::sum)
+                .description("Number of times a user's items were renumbered to make room for moves")
+                .register(registry);
+    }
+}
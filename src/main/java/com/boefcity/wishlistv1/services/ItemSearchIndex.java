@@ -0,0 +1,198 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.config.ReplicaRoutingDataSource;
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+// Inverted index over items (navn, beskrivelse og linkets host), ét pr. bruger da man kun søger i sin egen wishlist.
+// Bygges ved opstart og holdes opdateret ud fra ItemChangedEvent, så en søgning aldrig går til databasen.
+// Tokens ligger sorteret, så prefix-søgning er et range-opslag.
+@Component
+public class ItemSearchIndex {
+
+    // Et match i navnet vægter mere end i host, som vægter mere end i beskrivelsen
+    private static final int NAME_WEIGHT = 3;
+    private static final int HOST_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private final ItemRepository itemRepository;
+    private final ConcurrentMap<Integer, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    public ItemSearchIndex(ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void build() {
+        try (Stream<ItemSearchDocument> documents = itemRepository.streamSearchDocuments()) {
+            documents.forEach(this::put);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void itemChanged(ItemChangedEvent event) {
+        switch (event.getType()) {
+            case CREATED, UPDATED -> put(new ItemSearchDocument(event.getItemId(), event.getUserId(),
+                    event.getName(), event.getDescription(), event.getLink()));
+            case DELETED -> {
+                UserIndex index = indexes.get(event.getUserId());
+                if (index != null) {
+                    index.remove(event.getItemId());
+                }
+            }
+            // Importerede items har vi ikke id'erne på - brugerens index bygges forfra (fra primary, lige efter commit)
+            case IMPORTED -> {
+                UserIndex index = new UserIndex();
+                ReplicaRoutingDataSource.onPrimary(() -> itemRepository.findSearchDocumentsByUserId(event.getUserId()))
+                        .forEach(index::put);
+                indexes.put(event.getUserId(), index);
+            }
+        }
+    }
+
+    void put(ItemSearchDocument document) {
+        indexes.computeIfAbsent(document.getUserId(), id -> new UserIndex()).put(document);
+    }
+
+    // Alle ord i forespørgslen skal matche (som prefix af et ord i itemet). Et helt ord tæller dobbelt.
+    public List<ItemSearchDocument> search(int userId, String query, int limit) {
+        UserIndex index = indexes.get(userId);
+        Set<String> terms = tokenize(query);
+        if (index == null || terms.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, Integer> scores = null;
+        for (String term : terms) {
+            Map<Integer, Integer> termScores = index.match(term);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                scores.keySet().retainAll(termScores.keySet());
+                scores.replaceAll((id, score) -> score + termScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<ItemSearchDocument> hits = new ArrayList<>();
+        Map<Integer, Integer> finalScores = scores;
+        finalScores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .limit(limit)
+                .forEach(entry -> {
+                    ItemSearchDocument document = index.documents.get(entry.getKey());
+                    if (document != null) {
+                        hits.add(document);
+                    }
+                });
+        return hits;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (!token.isEmpty()) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    // Kun host-delen af linket er interessant at søge i, fx "amazon" i https://www.amazon.de/...
+    static Set<String> hostTokens(String link) {
+        if (link == null || link.isBlank()) {
+            return Set.of();
+        }
+        String candidate = link.contains("://") ? link.trim() : "http://" + link.trim();
+        try {
+            String host = URI.create(candidate).getHost();
+            Set<String> tokens = tokenize(host);
+            tokens.remove("www");
+            return tokens;
+        } catch (IllegalArgumentException e) {
+            return Set.of();
+        }
+    }
+
+    private static Map<String, Integer> weightedTokens(ItemSearchDocument document) {
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(document.getDescription()).forEach(t -> weights.merge(t, DESCRIPTION_WEIGHT, Math::max));
+        hostTokens(document.getLink()).forEach(t -> weights.merge(t, HOST_WEIGHT, Math::max));
+        tokenize(document.getName()).forEach(t -> weights.merge(t, NAME_WEIGHT, Math::max));
+        return weights;
+    }
+
+    // Skrivninger til en brugers index er synkroniserede, læsninger går direkte på de concurrent maps
+    private static class UserIndex {
+        private final NavigableMap<String, Map<Integer, Integer>> postings = new ConcurrentSkipListMap<>();
+        private final Map<Integer, ItemSearchDocument> documents = new ConcurrentHashMap<>();
+
+        synchronized void put(ItemSearchDocument document) {
+            remove(document.getId());
+            weightedTokens(document).forEach((token, weight) ->
+                    postings.computeIfAbsent(token, t -> new ConcurrentHashMap<>()).put(document.getId(), weight));
+            documents.put(document.getId(), document);
+        }
+
+        synchronized void remove(int itemId) {
+            ItemSearchDocument old = documents.remove(itemId);
+            if (old == null) {
+                return;
+            }
+            for (String token : weightedTokens(old).keySet()) {
+                Map<Integer, Integer> posting = postings.get(token);
+                if (posting != null) {
+                    posting.remove(itemId);
+                    if (posting.isEmpty()) {
+                        postings.remove(token);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Integer> match(String term) {
+            Map<Integer, Integer> scores = new HashMap<>();
+            postings.subMap(term, true, term + Character.MAX_VALUE, true).forEach((token, posting) -> {
+                int factor = token.equals(term) ? 2 : 1;
+                posting.forEach((itemId, weight) -> scores.merge(itemId, weight * factor, Math::max));
+            });
+            return scores;
+        }
+    }
+}
@@ -1,64 +1,349 @@
 package com.boefcity.wishlistv1.services;
 
 import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.config.ReplicaRoutingDataSource;
+import com.boefcity.wishlistv1.dto.ImportResult;
+import com.boefcity.wishlistv1.dto.ItemExportRow;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.dto.ItemView;
 import com.boefcity.wishlistv1.entity.Item;
 import com.boefcity.wishlistv1.repository.ItemRepository;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "wishlist.service", histogram = true) // Timer pr. metode - se MetricsConfig
 public class ItemServiceImpl implements ItemService {
+    private static final Limit NEAREST = Limit.of(1);
+
     private final ItemRepository itemRepository;
+    private final WishlistCache wishlistCache;
+    private final ItemImporter itemImporter;
+    private final ItemExporter itemExporter;
+    private final ItemSearchIndex itemSearchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ItemWriteBehindQueue writeBehindQueue;
+    private final ItemRankRebalancer rankRebalancer;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public ItemServiceImpl(ItemRepository itemRepository) {
+    public ItemServiceImpl(ItemRepository itemRepository, WishlistCache wishlistCache,
+                           ItemImporter itemImporter, ItemExporter itemExporter,
+                           ItemSearchIndex itemSearchIndex, ApplicationEventPublisher eventPublisher,
+                           ItemWriteBehindQueue writeBehindQueue, ItemRankRebalancer rankRebalancer,
+                           PlatformTransactionManager transactionManager) {
         this.itemRepository = itemRepository;
+        this.wishlistCache = wishlistCache;
+        this.itemImporter = itemImporter;
+        this.itemExporter = itemExporter;
+        this.itemSearchIndex = itemSearchIndex;
+        this.eventPublisher = eventPublisher;
+        this.writeBehindQueue = writeBehindQueue;
+        this.rankRebalancer = rankRebalancer;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
+    // Brugeren er låst fra den højeste rank læses til item'et er gemt, så samtidige creates, imports og flytninger
+    // ikke giver to items samme rank
+    @Transactional
     @Override
     public void create(Item item) {
+        Integer ownerId = ownerId(item);
+        if (ownerId != null) {
+            // Nye items kommer nederst - se ItemRankRebalancer
+            rankRebalancer.lock(ownerId);
+            Long last = itemRepository.findMaxRankByUserId(ownerId);
+            item.setRank(last != null ? last + ItemRankRebalancer.GAP : 0);
+        }
         itemRepository.save(item);
+        wishlistCache.evictAfterCommit(ownerId(item), null);
+        publish(ItemChangedEvent.Type.CREATED, item);
     }
     //Transactional bruges til at lave ændringer, ellers foretages et rollback
+    //Ét betinget UPDATE (se ItemRepository.updateIfCurrent) - item'et læses kun hvis det ikke blev opdateret,
+    //for at finde ud af om det skyldes ejerskab eller en samtidig ændring.
+    @Transactional
+    @Override
+    public void update(int userId, int id, Item itemDetails) {
+        if (writeBehindQueue.isEnabled()) {
+            // Skrives senere - se ItemWriteBehindQueue. Wishlisten får en ny version med det samme, så /items viser ændringen.
+            writeBehindQueue.update(userId, id, itemDetails);
+        } else {
+            updateNow(userId, id, itemDetails);
+        }
+        wishlistCache.evictAfterCommit(userId, id);
+        eventPublisher.publishEvent(new ItemChangedEvent(ItemChangedEvent.Type.UPDATED, userId, id,
+                itemDetails.getName(), itemDetails.getDescription(), itemDetails.getLink()));
+    }
+
+    private void updateNow(int userId, int id, Item itemDetails) {
+        int updated = itemRepository.updateIfCurrent(id, userId, itemDetails.getVersion(),
+                itemDetails.getName(), itemDetails.getDescription(), itemDetails.getLink());
+        if (updated == 0) {
+            ItemView current = itemRepository.findViewById(id)
+                    .filter(view -> view.getUserId() == userId)
+                    .orElseThrow(() -> new EntityNotFoundException("Item not found for this id: " + id));
+            throw new ItemUpdateConflictException(current);
+        }
+    }
+
+    // Item'et får en rank mellem de nye naboers, så kun dets egen række skrives. Er der ikke plads imellem,
+    // nummereres brugerens items om først. Brugeren er låst imens, så to flytninger ikke tager samme plads.
     @Transactional
     @Override
-    public Item update(int id, Item itemDetails) {
-        Item itemToUpdate = itemRepository.findById(id)
+    public void move(int userId, int id, Integer after, Integer before) {
+        rankRebalancer.lock(userId);
+        long rank = rankOf(userId, id);
+        if (Integer.valueOf(id).equals(after) || Integer.valueOf(id).equals(before)) {
+            return;
+        }
+        Neighbours neighbours = neighbours(userId, id, after, before);
+        if (neighbours.surround(rank)) {
+            return; // Står der allerede
+        }
+        if (!neighbours.hasRoom()) {
+            rankRebalancer.rebalance(userId);
+            neighbours = neighbours(userId, id, after, before);
+        }
+        itemRepository.updateRank(id, userId, neighbours.middle());
+        if (neighbours.isCrowded()) {
+            rankRebalancer.rebalanceLater(userId);
+        }
+        wishlistCache.evictAfterCommit(userId, id);
+        eventPublisher.publishEvent(new ItemChangedEvent(ItemChangedEvent.Type.MOVED, userId, id, null, null, null));
+    }
+
+    private Neighbours neighbours(int userId, int id, Integer after, Integer before) {
+        if (after != null) {
+            long lower = rankOf(userId, after);
+            return new Neighbours(lower, first(itemRepository.findRanksAfter(userId, lower, after, id, NEAREST)));
+        }
+        if (before != null) {
+            long upper = rankOf(userId, before);
+            return new Neighbours(first(itemRepository.findRanksBefore(userId, upper, before, id, NEAREST)), upper);
+        }
+        return new Neighbours(null, first(itemRepository.findFirstRanks(userId, id, NEAREST)));
+    }
+
+    private long rankOf(int userId, int id) {
+        return itemRepository.findRankByIdAndUserId(id, userId)
                 .orElseThrow(() -> new EntityNotFoundException("Item not found for this id: " + id));
+    }
+
+    private static Long first(List<Long> ranks) {
+        return ranks.isEmpty() ? null : ranks.get(0);
+    }
+
+    // Ranks lige over og under den plads et item flyttes til. null er starten/slutningen af wishlisten.
+    private record Neighbours(Long lower, Long upper) {
+
+        boolean surround(long rank) {
+            return (lower == null || lower < rank) && (upper == null || rank < upper);
+        }
+
+        boolean hasRoom() {
+            return lower == null || upper == null || upper - lower >= 2;
+        }
 
-        itemToUpdate.setName(itemDetails.getName());
-        itemToUpdate.setDescription(itemDetails.getDescription());
-        itemToUpdate.setLink(itemDetails.getLink());
+        boolean isCrowded() {
+            return lower != null && upper != null && upper - lower < 2 * ItemRankRebalancer.MIN_GAP;
+        }
 
-        return itemRepository.save(itemToUpdate);
+        long middle() {
+            if (lower == null) {
+                return upper - ItemRankRebalancer.GAP;
+            }
+            if (upper == null) {
+                return lower + ItemRankRebalancer.GAP;
+            }
+            return lower + (upper - lower) / 2;
+        }
     }
 
-    @Transactional(readOnly = true) // Når vi kun skal læse fra databasen. Optimerer resource usage og perfomance.
+    // Ikke @Transactional: ved et cache hit skal vi ikke åbne en transaktion (og hente en connection).
+    // Ved et miss kører repository-kaldet i sin egen read-only transaktion.
     @Override
     public Optional<Item> findById(int id) {
-        return itemRepository.findById(id);
+        return wishlistCache.getItem(id, () -> itemRepository.findById(id));
+
+    }
 
+    @Override
+    public Optional<ItemView> findViewById(int id) {
+        if (writeBehindQueue.isEnabled()) {
+            Optional<ItemView> pending = writeBehindQueue.pendingView(id);
+            if (pending.isPresent()) {
+                return pending;
+            }
+        }
+        // Versionen sendes med tilbage ved update - fra en replica der er bagud ville det give en falsk konflikt
+        return ReplicaRoutingDataSource.onPrimary(() -> itemRepository.findViewById(id));
     }
 
+    @Transactional
     @Override
     public void deleteById(int id) {
+        // Ejeren skal kendes for at invalidere wishlisten. deleteById slår selv op i samme persistence context.
+        Optional<Item> item = itemRepository.findById(id);
+        Integer ownerId = item.map(this::ownerId).orElse(null);
         itemRepository.deleteById(id);
+        if (ownerId != null && writeBehindQueue.isEnabled()) {
+            writeBehindQueue.discard(ownerId, List.of(id));
+        }
+        wishlistCache.evictAfterCommit(ownerId, id);
+        item.ifPresent(deleted -> publish(ItemChangedEvent.Type.DELETED, deleted));
     }
 
-    @Transactional(readOnly = true)
+    // Brugerens id'er findes først (kun id'er, uden at items og deres User hentes), så events, cache og write-behind
+    // kun rammer items der faktisk slettes - ikke fremmede eller ukendte id'er fra requesten.
+    // Brugeren er låst fra udvælgelsen til DELETE, så listen passer med det der slettes.
+    @Transactional
+    @Override
+    public int deleteByIdsForUser(int userId, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        rankRebalancer.lock(userId);
+        List<Integer> owned = itemRepository.findIdsByIdInAndUserId(ids, userId);
+        if (owned.isEmpty()) {
+            return 0;
+        }
+        int deleted = itemRepository.deleteByIdInAndUserId(owned, userId);
+        if (writeBehindQueue.isEnabled()) {
+            writeBehindQueue.discard(userId, owned);
+        }
+        wishlistCache.evictItemsAfterCommit(userId, owned);
+        owned.forEach(id -> eventPublisher.publishEvent(
+                new ItemChangedEvent(ItemChangedEvent.Type.DELETED, userId, id, null, null, null)));
+        return deleted;
+    }
+
+    // Se ItemImporter - alle batches indsættes i samme transaktion, med brugeren låst ligesom i create
+    @Transactional
+    @Override
+    public ImportResult importItems(int userId, InputStream input, ItemFileFormat format) {
+        rankRebalancer.lock(userId);
+        ImportResult result = itemImporter.importItems(userId, input, format);
+        wishlistCache.evictAfterCommit(userId, null);
+        if (result.getImported() > 0) {
+            eventPublisher.publishEvent(new ItemChangedEvent(ItemChangedEvent.Type.IMPORTED, userId, null, null, null, null));
+        }
+        return result;
+    }
+
+    // Ikke @Transactional: ventende ændringer skal skrives på primary før den read-only transaktion starter.
+    // Transaktionen holdes åben mens der skrives, da rækkerne læses direkte fra databasen - se ItemRepository
+    @Override
+    public void exportItems(int userId, ItemFileFormat format, OutputStream output) {
+        if (writeBehindQueue.isEnabled()) {
+            writeBehindQueue.flush(); // Eksporten læser direkte fra databasen
+        }
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<ItemExportRow> rows = itemRepository.streamExportRowsByUserId(userId)) {
+                itemExporter.write(rows, format, output);
+            }
+        });
+    }
+
+    @Transactional(readOnly = true) // Når vi kun skal læse fra databasen. Optimerer resource usage og perfomance.
     @Override
     public List<Item> findAll() {
         return itemRepository.findAll();
     }
     @Override
     public List<Item> findByUserUserId(int userId) {
-        return itemRepository.findByUserUserId(userId);
+        return wishlistCache.getWishlist(userId, () -> itemRepository.findByUserUserId(userId));
     }
 
-}
+    @Override
+    public ItemPage findPageByUserUserId(int userId, Integer after, Integer before, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        ItemPage page = wishlistCache.getPage(userId, after, before, pageSize,
+                () -> loadPage(userId, after, before, pageSize));
+        return writeBehindQueue.isEnabled() ? writeBehindQueue.overlay(page) : page;
+    }
+
+    // Slås op i hukommelsen - rører hverken databasen eller cachen af items
+    @Override
+    public String wishlistVersion(int userId) {
+        return wishlistCache.version(userId);
+    }
+
+    private ItemPage loadPage(int userId, Integer after, Integer before, int pageSize) {
+        // Vi henter ét item ekstra for at vide om der findes en side mere i samme retning
+        Limit limit = Limit.of(pageSize + 1);
+        // Cursoren er et item id. Dens rank slås op, så siden starter ved item'et - også hvis det er flyttet siden.
+        // Findes item'et ikke længere, eller er der intet i den retning, vises første side.
+        Integer cursor = before != null ? before : after;
+        Optional<Long> cursorRank = cursor == null ? Optional.empty() : itemRepository.findRankByIdAndUserId(cursor, userId);
 
+        if (before != null && cursorRank.isPresent()) {
+            List<ItemView> rows = new ArrayList<>(itemRepository.findViewsByUserIdBefore(userId, cursorRank.get(), before, limit));
+            if (!rows.isEmpty()) {
+                boolean hasPrevious = rows.size() > pageSize;
+                if (hasPrevious) {
+                    rows.remove(rows.size() - 1);
+                }
+                Collections.reverse(rows);
+                Integer previous = hasPrevious ? rows.get(0).getId() : null;
+                return new ItemPage(rows, rows.get(rows.size() - 1).getId(), previous, pageSize);
+            }
+        }
 
+        if (after != null && cursorRank.isPresent()) {
+            List<ItemView> rows = new ArrayList<>(itemRepository.findViewsByUserIdAfter(userId, cursorRank.get(), after, limit));
+            if (!rows.isEmpty()) {
+                return forwardPage(rows, rows.get(0).getId(), pageSize);
+            }
+        }
+
+        return forwardPage(new ArrayList<>(itemRepository.findViewsByUserId(userId, limit)), null, pageSize);
+    }
+
+    private static ItemPage forwardPage(List<ItemView> rows, Integer previous, int pageSize) {
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows.remove(rows.size() - 1);
+        }
+        Integer next = hasNext ? rows.get(rows.size() - 1).getId() : null;
+        return new ItemPage(rows, next, previous, pageSize);
+    }
+
+    // Søgningen går kun mod ItemSearchIndex, aldrig mod databasen
+    @Override
+    public List<ItemSearchDocument> searchItems(int userId, String query, int limit) {
+        return itemSearchIndex.search(userId, query, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    private Integer ownerId(Item item) {
+        return item.getUser() != null ? item.getUser().getUserId() : null;
+    }
+
+    // Se ItemChangedEvent - lytterne kører efter commit
+    private void publish(ItemChangedEvent.Type type, Item item) {
+        Integer ownerId = ownerId(item);
+        if (ownerId != null) {
+            eventPublisher.publishEvent(new ItemChangedEvent(type, ownerId, item.getId(),
+                    item.getName(), item.getDescription(), item.getLink()));
+        }
+    }
+
+}
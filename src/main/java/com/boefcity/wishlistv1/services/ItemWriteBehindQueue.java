@@ -0,0 +1,291 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Write-behind af item-ændringer (wishlist.write-behind.enabled=true, slået fra som standard).
+// En ændring gemmes i hukommelsen og skrives først til databasen ved næste flush (hvert flush-interval,
+// eller når max-pending items venter). Flere ændringer af samme item inden da bliver til ét UPDATE.
+// - læsninger gennem ItemServiceImpl ser de ventende ændringer (read-your-writes), se overlay og pendingView
+// - den første ændring af et item tjekker ejer og version mod databasen, de næste tjekkes mod den ventende ændring
+// - flush skriver alle ventende ændringer i én JDBC batch med samme betingede UPDATE som ItemRepository.updateIfCurrent
+// - køen tømmes når appen lukkes ned. Går processen ned uden shutdown, mistes ændringerne.
+// - ændringerne ligger kun på denne instans. Brug det ikke med flere instanser uden sticky sessions.
+// Har en anden ændret item'et i databasen inden flush, mistes den ventende ændring (wishlist.writebehind.conflicts).
+@Component
+public class ItemWriteBehindQueue implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemWriteBehindQueue.class);
+    private static final String UPDATE_SQL =
+            "update items set name = ?, description = ?, link = ?, version = ? where id = ? and user_id = ? and version = ?";
+
+    private final ItemRepository itemRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final WishlistCache wishlistCache;
+    private final boolean enabled;
+    private final int maxPending;
+    private final ConcurrentMap<Integer, PendingEdit> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private Timer flushTimer; // Sættes i bindTo
+
+    public ItemWriteBehindQueue(ItemRepository itemRepository,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                WishlistCache wishlistCache,
+                                @Value("${wishlist.write-behind.enabled:false}") boolean enabled,
+                                @Value("${wishlist.write-behind.flush-interval:1s}") Duration flushInterval,
+                                @Value("${wishlist.write-behind.max-pending:500}") int maxPending) {
+        this.itemRepository = itemRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Altid sin egen read-write transaktion på primary - også hvis flush kaldes inde i en (read-only) transaktion
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.wishlistCache = wishlistCache;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "item-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = flushInterval.toMillis();
+            this.flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Samme regler som ItemService.update: EntityNotFoundException hvis item'et ikke er brugerens,
+    // ItemUpdateConflictException hvis details.version ikke er den nyeste (inkl. ventende ændringer).
+    public void update(int userId, int id, Item details) {
+        while (true) {
+            PendingEdit old = pending.get(id);
+            if (old == null) {
+                ItemView current = itemRepository.findViewById(id)
+                        .filter(view -> view.getUserId() == userId)
+                        .orElseThrow(() -> new EntityNotFoundException("Item not found for this id: " + id));
+                if (current.getVersion() != details.getVersion()) {
+                    throw new ItemUpdateConflictException(current);
+                }
+                PendingEdit edit = new PendingEdit(id, userId, current.getVersion(), current.getVersion() + 1, details, false);
+                if (pending.putIfAbsent(id, edit) == null) {
+                    break;
+                }
+                continue; // En anden nåede at lægge en ændring i køen - prøv igen mod den
+            }
+            if (old.getUserId() != userId) {
+                throw new EntityNotFoundException("Item not found for this id: " + id);
+            }
+            if (old.getNewVersion() != details.getVersion()) {
+                throw new ItemUpdateConflictException(old.view());
+            }
+            // Hver ændring giver item'et en ny version, også når den slås sammen med en ventende - ellers kunne to faner
+            // der begge har set den ventende ændring, gemme oven i hinanden. Databasen tjekkes stadig mod expectedVersion.
+            // Er den gamle ændring ved at blive skrevet, bygger den nye videre på den version flush giver item'et.
+            PendingEdit next = old.isFlushing()
+                    ? new PendingEdit(id, userId, old.getNewVersion(), old.getNewVersion() + 1, details, false)
+                    : new PendingEdit(id, userId, old.getExpectedVersion(), old.getNewVersion() + 1, details, false);
+            if (pending.replace(id, old, next)) {
+                if (!old.isFlushing()) {
+                    coalesced.increment();
+                }
+                break;
+            }
+        }
+        if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false); // Lukker ned - shutdown flusher selv
+            }
+        }
+    }
+
+    // Slettede items skal ikke skrives bagefter. Kun brugerens egne ændringer fjernes.
+    public void discard(int userId, Collection<Integer> ids) {
+        ids.forEach(id -> pending.computeIfPresent(id, (key, edit) -> edit.getUserId() == userId ? null : edit));
+    }
+
+    public Optional<ItemView> pendingView(int id) {
+        PendingEdit edit = pending.get(id);
+        return edit == null ? Optional.empty() : Optional.of(edit.view());
+    }
+
+    // Erstatter items på siden der har ventende ændringer. Cachede sider indeholder altid databasens udgave.
+    public ItemPage overlay(ItemPage page) {
+        if (pending.isEmpty()) {
+            return page;
+        }
+        List<ItemView> items = new ArrayList<>(page.getItems().size());
+        for (ItemView item : page.getItems()) {
+            PendingEdit edit = pending.get(item.getId());
+            items.add(edit != null && edit.getUserId() == item.getUserId() ? edit.view() : item);
+        }
+        return new ItemPage(items, page.getNextCursor(), page.getPreviousCursor(), page.getSize());
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    // Skriver alle ventende ændringer. Synkroniseret, så den planlagte flush og et direkte kald ikke overlapper.
+    public synchronized void flush() {
+        flushRequested.set(false);
+        List<PendingEdit> batch = new ArrayList<>();
+        for (Integer id : pending.keySet()) {
+            PendingEdit edit = pending.computeIfPresent(id, (key, old) -> old.isFlushing() ? old : old.asFlushing());
+            if (edit != null) {
+                batch.add(edit);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Object[]> rows = batch.stream()
+                .map(edit -> new Object[]{edit.getName(), edit.getDescription(), edit.getLink(), edit.getNewVersion(),
+                        edit.getId(), edit.getUserId(), edit.getExpectedVersion()})
+                .toList();
+        int[] counts;
+        try {
+            counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, rows));
+        } catch (RuntimeException e) {
+            // Intet er skrevet - ændringerne bliver i køen til næste flush. Ændringer der er kommet til imens,
+            // bygger på en version item'et ikke fik, og flyttes tilbage til den version databasen stadig har.
+            for (PendingEdit edit : batch) {
+                pending.computeIfPresent(edit.getId(), (id, current) -> current == edit || current.getExpectedVersion() == edit.getNewVersion()
+                        ? current.rebase(edit.getExpectedVersion()) : current);
+            }
+            throw e;
+        }
+
+        Set<Integer> users = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingEdit edit = batch.get(i);
+            users.add(edit.getUserId());
+            // SUCCESS_NO_INFO (-2) betyder at driveren ikke kender antallet - så går vi ud fra at det lykkedes
+            if (counts != null && counts[i] == 0) {
+                log.warn("Write-behind update of item {} was lost: it was changed or deleted in the database", edit.getId());
+                conflicts.increment();
+            }
+        }
+        // Cachen tømmes før de ventende ændringer fjernes, så en læsning aldrig ser den gamle udgave fra cachen
+        users.forEach(userId -> wishlistCache.evict(userId, null));
+        batch.forEach(edit -> {
+            wishlistCache.evict(null, edit.getId());
+            pending.remove(edit.getId(), edit);
+        });
+        if (flushTimer != null) {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Write-behind flush failed, retrying at the next flush", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("wishlist.writebehind.pending", pending, ConcurrentMap::size)
+                .description("Item edits waiting to be written").register(registry);
+        flushTimer = Timer.builder("wishlist.writebehind.flush")
+                .description("Time to write one batch of item edits").publishPercentileHistogram().register(registry);
+        FunctionCounter.builder("wishlist.writebehind.coalesced", coalesced, LongAdder::sum)
+                .description("Item edits merged into an edit that was already waiting").register(registry);
+        FunctionCounter.builder("wishlist.writebehind.conflicts", conflicts, LongAdder::sum)
+                .description("Item edits lost because the item changed in the database first").register(registry);
+    }
+
+    // En ventende ændring. expectedVersion er den version item'et har i databasen nu, newVersion den det får.
+    // newVersion er expectedVersion + antallet af ændringer der er slået sammen i den.
+    @Getter
+    @AllArgsConstructor
+    static class PendingEdit {
+        private final int id;
+        private final int userId;
+        private final int expectedVersion;
+        private final int newVersion;
+        private final String name;
+        private final String description;
+        private final String link;
+        private final boolean flushing;
+
+        PendingEdit(int id, int userId, int expectedVersion, int newVersion, Item details, boolean flushing) {
+            this(id, userId, expectedVersion, newVersion, details.getName(), details.getDescription(), details.getLink(),
+                    flushing);
+        }
+
+        PendingEdit asFlushing() {
+            return new PendingEdit(id, userId, expectedVersion, newVersion, name, description, link, true);
+        }
+
+        // Databasen har stadig version - den version formularerne har set, ændres ikke
+        PendingEdit rebase(int version) {
+            return new PendingEdit(id, userId, version, newVersion, name, description, link, false);
+        }
+
+        ItemView view() {
+            return new ItemView(id, userId, name, description, link, newVersion);
+        }
+    }
+}
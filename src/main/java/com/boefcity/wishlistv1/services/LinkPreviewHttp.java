@@ -0,0 +1,207 @@
+package com.boefcity.wishlistv1.services;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// En enkelt HTTP/1.1 GET til en adresse der allerede er slået op og tjekket (se LinkPreviewServiceImpl.checkAllowed).
+// java.net.http.HttpClient slår selv hosten op igen, så en DNS server kunne svare med en offentlig adresse til tjekket
+// og en intern til forbindelsen (DNS rebinding). Her forbindes der til præcis den tjekkede adresse.
+// Ved https bruges hostnavnet stadig til SNI og til at tjekke certifikatet.
+// Kun det link previews har brug for: ingen keep-alive, ingen komprimering, og body'en læses højst til maxBytes.
+final class LinkPreviewHttp {
+
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    record Response(int status, Map<String, String> headers, byte[] body) {
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private LinkPreviewHttp() {
+    }
+
+    static Response get(InetAddress address, URI uri, Duration timeout, int maxBytes) throws IOException {
+        boolean https = "https".equals(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : https ? 443 : 80;
+        // Hele svaret skal være læst inden timeout - ikke kun hver enkelt read
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int timeoutMillis = (int) Math.max(1, timeout.toMillis());
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            if (https) {
+                socket = tls(socket, uri.getHost(), port);
+            }
+            String target = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                target += "?" + uri.getRawQuery();
+            }
+            String host = uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+            String request = "GET " + target + " HTTP/1.1\r\n"
+                    + "Host: " + host + "\r\n"
+                    + "Accept: text/html\r\n"
+                    + "Accept-Encoding: identity\r\n"
+                    + "User-Agent: WishListV1-LinkPreview\r\n"
+                    + "Connection: close\r\n\r\n";
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String statusLine = readLine(in, deadline);
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/1.")) {
+                throw new IOException("Not an HTTP response: " + statusLine);
+            }
+            int status = parseInt(parts[1]);
+            Map<String, String> headers = readHeaders(in, deadline);
+            Response head = new Response(status, headers, new byte[0]);
+            if (status != 200) {
+                return head; // Redirects og fejl bruger ikke body'en
+            }
+            byte[] body;
+            if ("chunked".equalsIgnoreCase(head.header("Transfer-Encoding"))) {
+                body = readChunked(in, maxBytes, deadline);
+            } else if (head.header("Content-Length") != null) {
+                body = readBody(in, (int) Math.min(maxBytes, parseLong(head.header("Content-Length"))), deadline);
+            } else {
+                body = readBody(in, maxBytes, deadline);
+            }
+            return new Response(status, headers, body);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static Socket tls(Socket socket, String host, int port) throws IOException {
+        try {
+            SSLSocket ssl = (SSLSocket) SSLContext.getDefault().getSocketFactory().createSocket(socket, host, port, true);
+            SSLParameters parameters = ssl.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            ssl.setSSLParameters(parameters);
+            ssl.startHandshake();
+            return ssl;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in, long deadline) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int total = 0;
+        String line;
+        while (!(line = readLine(in, deadline)).isEmpty()) {
+            total += line.length();
+            if (total > MAX_HEADER_BYTES) {
+                throw new IOException("Response headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.putIfAbsent(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] readChunked(InputStream in, int maxBytes, long deadline) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (body.size() < maxBytes) {
+            String sizeLine = readLine(in, deadline);
+            int extension = sizeLine.indexOf(';');
+            long size = parseHex(extension >= 0 ? sizeLine.substring(0, extension) : sizeLine);
+            if (size <= 0) {
+                break;
+            }
+            body.writeBytes(readBody(in, (int) Math.min(size, maxBytes - body.size()), deadline));
+            if (body.size() < maxBytes) {
+                readLine(in, deadline); // CRLF efter hver chunk
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static byte[] readBody(InputStream in, int length, long deadline) throws IOException {
+        byte[] buffer = new byte[length];
+        int read = 0;
+        while (read < length) {
+            checkDeadline(deadline);
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read == length ? buffer : Arrays.copyOf(buffer, read);
+    }
+
+    private static String readLine(InputStream in, long deadline) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed in the middle of the response");
+            }
+            if (line.length() > MAX_HEADER_BYTES) {
+                throw new IOException("Response line too long");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+            if (line.length() % 256 == 0) {
+                checkDeadline(deadline);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void checkDeadline(long deadline) throws SocketTimeoutException {
+        if (System.nanoTime() - deadline > 0) {
+            throw new SocketTimeoutException("Link preview response took too long");
+        }
+    }
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status: " + value);
+        }
+    }
+
+    private static long parseLong(String value) throws IOException {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length: " + value);
+        }
+    }
+
+    private static long parseHex(String value) throws IOException {
+        try {
+            return Long.parseLong(value.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + value);
+        }
+    }
+}
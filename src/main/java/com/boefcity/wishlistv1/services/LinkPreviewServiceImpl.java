@@ -0,0 +1,478 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.LinkPreviewService;
+import com.boefcity.wishlistv1.entity.LinkPreview;
+import com.boefcity.wishlistv1.repository.LinkPreviewRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Henter titel og billede (Open Graph / <title>) for items' links i baggrunden.
+// - højst linkpreview.max-concurrent hentninger ad gangen og en begrænset kø; er køen fuld prøver vi ved næste visning
+// - højst én request pr. linkpreview.per-host-interval til samme host; hentninger der skal vente, venter uden at optage en tråd
+// - resultaterne gemmes i link_previews og caches i hukommelsen, fejl gemmes også så vi ikke hamrer på døde sider
+// - adresser på det lokale netværk afvises (SSRF), medmindre linkpreview.allow-private-addresses=true (tests).
+//   Der forbindes til den adresse der blev tjekket, så DNS rebinding ikke kan sende os et andet sted hen (se LinkPreviewHttp)
+@Service
+public class LinkPreviewServiceImpl implements LinkPreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkPreviewServiceImpl.class);
+    private static final int MAX_REDIRECTS = 3;
+    private static final Pattern TITLE = Pattern.compile("<title[^>]*>(.*?)</title>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern META = Pattern.compile("<meta\\s[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile("([\\w:-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+    private final LinkPreviewRepository linkPreviewRepository;
+    private final ThreadPoolExecutor executor;
+    // Hentninger der venter på deres host - se Fetch
+    private final ScheduledExecutorService delays;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int queueCapacity;
+    private final Cache<String, LinkPreview> previews;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // Tidspunkt (nanoTime) hvor næste request til en host tidligst må starte. Hostene kommer fra brugernes links,
+    // så en host fjernes når tidspunktet er passeret - derefter er den det samme som en host der ikke er set før.
+    private final Cache<String, Long> nextRequestPerHost;
+    private final Duration timeout;
+    private final long perHostIntervalNanos;
+    private final int maxBytes;
+    private final Duration ttl;
+    private final Duration failureTtl;
+    private final boolean allowPrivateAddresses;
+
+    public LinkPreviewServiceImpl(LinkPreviewRepository linkPreviewRepository,
+                                  @Value("${linkpreview.max-concurrent:4}") int maxConcurrent,
+                                  @Value("${linkpreview.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${linkpreview.per-host-interval:1s}") Duration perHostInterval,
+                                  @Value("${linkpreview.timeout:5s}") Duration timeout,
+                                  @Value("${linkpreview.max-bytes:262144}") int maxBytes,
+                                  @Value("${linkpreview.ttl:7d}") Duration ttl,
+                                  @Value("${linkpreview.failure-ttl:1d}") Duration failureTtl,
+                                  @Value("${linkpreview.allow-private-addresses:false}") boolean allowPrivateAddresses) {
+        this.linkPreviewRepository = linkPreviewRepository;
+        this.timeout = timeout;
+        this.perHostIntervalNanos = perHostInterval.toNanos();
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.failureTtl = failureTtl;
+        this.allowPrivateAddresses = allowPrivateAddresses;
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "link-preview");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.queueCapacity = queueCapacity;
+        this.delays = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "link-preview-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.previews = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofHours(1))
+                .build();
+        this.nextRequestPerHost = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String host, Long next, long currentTime) {
+                        return Math.max(0, next - currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String host, Long next, long currentTime, long currentDuration) {
+                        return Math.max(0, next - currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String host, Long next, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Map<String, LinkPreview> previewsFor(Collection<String> links) {
+        Map<String, LinkPreview> result = new HashMap<>();
+        Map<String, String> missing = new HashMap<>(); // hash -> link
+        for (String link : links) {
+            String url = normalize(link);
+            if (url == null) {
+                continue;
+            }
+            LinkPreview preview = previews.getIfPresent(url);
+            if (preview != null) {
+                addIfUsable(result, link, preview);
+            } else {
+                missing.put(hash(url), link);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // Ét opslag for alle de links der ikke lå i hukommelsen
+            for (LinkPreview preview : linkPreviewRepository.findAllById(missing.keySet())) {
+                previews.put(preview.getUrl(), preview);
+                addIfUsable(result, missing.remove(preview.getUrlHash()), preview);
+            }
+            missing.values().forEach(this::requestPreview);
+        }
+        return result;
+    }
+
+    private void addIfUsable(Map<String, LinkPreview> result, String link, LinkPreview preview) {
+        Duration age = Duration.between(preview.getFetchedAt(), Instant.now());
+        if (age.compareTo(preview.isAvailable() ? ttl : failureTtl) > 0) {
+            requestPreview(link);
+        }
+        if (preview.isAvailable()) {
+            result.put(link, preview);
+        }
+    }
+
+    @Override
+    public void requestPreview(String link) {
+        String url = normalize(link);
+        if (url == null || !inFlight.add(url)) {
+            return;
+        }
+        try {
+            executor.execute(new Fetch(url));
+        } catch (RejectedExecutionException e) {
+            // Køen er fuld - linket bliver bedt om igen næste gang det vises
+            inFlight.remove(url);
+        }
+    }
+
+    @Override
+    public boolean isFetching(Collection<String> links) {
+        for (String link : links) {
+            String url = normalize(link);
+            if (url != null && inFlight.contains(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Nye og ændrede links hentes med det samme, så preview'et er klar når listen vises
+    @TransactionalEventListener(fallbackExecution = true)
+    public void itemChanged(ItemChangedEvent event) {
+        if (event.getType() == ItemChangedEvent.Type.CREATED || event.getType() == ItemChangedEvent.Type.UPDATED) {
+            requestPreview(event.getLink());
+        }
+    }
+
+    // Henter og parser siden med det samme, uden at vente på hosten. Kaster aldrig - en fejl giver available=false.
+    LinkPreview fetch(String url) {
+        Fetch fetch = new Fetch(url);
+        while (!fetch.step()) {
+            // Næste redirect
+        }
+        return fetch.preview;
+    }
+
+    // Én hentning af et link, evt. over flere redirects. Skal hosten vente før næste request, lægges hentningen
+    // til side og sendes til executoren igen når der er tid - den sover ikke på en af de få fetch-tråde,
+    // så mange links til én host ikke holder links til alle andre hosts tilbage.
+    private final class Fetch implements Runnable {
+        private final String url;
+        private final LinkPreview preview;
+        private URI uri;
+        private int redirects;
+        private boolean slotReserved;
+
+        Fetch(String url) {
+            this.url = url;
+            this.preview = new LinkPreview(hash(url), url, null, null, false, Instant.now());
+        }
+
+        @Override
+        public void run() {
+            boolean done = false;
+            try {
+                while (!done) {
+                    if (!slotReserved && uri != null) {
+                        long wait = reserveSlot(uri.getHost());
+                        if (wait > 0) {
+                            slotReserved = true;
+                            later(this, wait);
+                            return;
+                        }
+                    }
+                    slotReserved = false;
+                    done = step();
+                }
+                linkPreviewRepository.save(preview);
+                previews.put(url, preview);
+            } catch (RuntimeException e) {
+                done = true;
+                log.warn("Could not store link preview for {}", url, e);
+            } finally {
+                if (done) {
+                    inFlight.remove(url);
+                }
+            }
+        }
+
+        // Første kald parser kun url'en, så hosten kendes. Derefter ét request pr. kald - true når preview'et er færdigt.
+        boolean step() {
+            try {
+                if (uri == null) {
+                    uri = URI.create(url);
+                    return false;
+                }
+                // Redirects følges manuelt, så hver adresse bliver tjekket
+                InetAddress address = checkAllowed(uri);
+                LinkPreviewHttp.Response response = LinkPreviewHttp.get(address, uri, timeout, maxBytes);
+                int status = response.status();
+                if (status >= 300 && status < 400 && response.header("Location") != null) {
+                    uri = uri.resolve(response.header("Location"));
+                    return ++redirects > MAX_REDIRECTS;
+                }
+                String contentType = response.header("Content-Type") != null ? response.header("Content-Type") : "";
+                if (status == 200 && contentType.toLowerCase(Locale.ROOT).contains("html")) {
+                    parse(new String(response.body(), charset(contentType)), uri, preview);
+                    preview.setAvailable(preview.getTitle() != null || preview.getImageUrl() != null);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.debug("Link preview failed for {}: {}", url, e.toString());
+            }
+            return true;
+        }
+    }
+
+    // Sender hentningen til executoren igen om wait nanosekunder. Højst queue-capacity hentninger venter ad gangen.
+    private void later(Fetch fetch, long wait) {
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            inFlight.remove(fetch.url);
+            return;
+        }
+        try {
+            delays.schedule(() -> {
+                waiting.decrementAndGet();
+                try {
+                    executor.execute(fetch);
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(fetch.url);
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Lukker ned
+            waiting.decrementAndGet();
+            inFlight.remove(fetch.url);
+        }
+    }
+
+    static void parse(String html, URI base, LinkPreview preview) {
+        Map<String, String> meta = new HashMap<>();
+        Matcher tags = META.matcher(html);
+        while (tags.find()) {
+            Map<String, String> attributes = new HashMap<>();
+            Matcher attribute = ATTRIBUTE.matcher(tags.group());
+            while (attribute.find()) {
+                String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3);
+                attributes.put(attribute.group(1).toLowerCase(Locale.ROOT), value);
+            }
+            String key = attributes.containsKey("property") ? attributes.get("property") : attributes.get("name");
+            if (key != null && attributes.containsKey("content")) {
+                meta.putIfAbsent(key.toLowerCase(Locale.ROOT), attributes.get("content"));
+            }
+        }
+
+        String title = meta.get("og:title");
+        if (title == null) {
+            Matcher matcher = TITLE.matcher(html);
+            title = matcher.find() ? matcher.group(1) : null;
+        }
+        preview.setTitle(truncate(unescape(title), 512));
+
+        String image = meta.getOrDefault("og:image", meta.get("twitter:image"));
+        if (image != null && !image.isBlank()) {
+            try {
+                URI imageUri = base.resolve(unescape(image).trim());
+                if ("http".equals(imageUri.getScheme()) || "https".equals(imageUri.getScheme())) {
+                    preview.setImageUrl(truncate(imageUri.toString(), 2048));
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Ugyldig billed-url - vi viser bare ikke noget billede
+            }
+        }
+    }
+
+    // Slår hosten op og giver den adresse der skal forbindes til. Peger nogen af adresserne ind på et lokalt netværk,
+    // afvises linket helt - ellers kunne en host med flere adresser bruges til at ramme den interne.
+    private InetAddress checkAllowed(URI uri) throws IOException {
+        if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Unsupported link: " + uri);
+        }
+        InetAddress[] addresses = InetAddress.getAllByName(uri.getHost());
+        if (!allowPrivateAddresses) {
+            for (InetAddress address : addresses) {
+                if (isPrivate(address)) {
+                    throw new IllegalArgumentException("Link points to a private address: " + uri.getHost());
+                }
+            }
+        }
+        return addresses[0];
+    }
+
+    static boolean isPrivate(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            int first = bytes[0] & 0xff;
+            int second = bytes[1] & 0xff;
+            return first == 0                                    // 0.0.0.0/8 "dette netværk"
+                    || first == 100 && (second & 0xc0) == 64     // 100.64.0.0/10 carrier-grade NAT
+                    || first == 192 && second == 0 && bytes[2] == 0 // 192.0.0.0/24 IETF protocol assignments
+                    || first == 198 && (second & 0xfe) == 18     // 198.18.0.0/15 benchmark netværk
+                    || first >= 240;                             // 240.0.0.0/4 reserveret og broadcast
+        }
+        if (address instanceof Inet6Address inet6) {
+            if ((bytes[0] & 0xfe) == 0xfc) {
+                return true; // fc00::/7 unique local - IPv6's private netværk (isSiteLocalAddress dækker kun fec0::/10)
+            }
+            if ((bytes[0] & 0xff) == 0x20 && bytes[1] == 0x01 && bytes[2] == 0 && bytes[3] == 0) {
+                return true; // 2001::/32 Teredo - klientens IPv4 adresse er skjult i adressen, så den afvises helt
+            }
+            if (inet6.isIPv4CompatibleAddress() || isNat64(bytes)) {
+                // ::a.b.c.d og 64:ff9b::a.b.c.d når en IPv4 adresse - tjek den
+                return isPrivateIpv4(Arrays.copyOfRange(bytes, 12, 16));
+            }
+            if ((bytes[0] & 0xff) == 0x20 && bytes[1] == 0x02) {
+                // 2002:aabb:ccdd::/48 6to4 når IPv4 adressen aa.bb.cc.dd
+                return isPrivateIpv4(Arrays.copyOfRange(bytes, 2, 6));
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPrivateIpv4(byte[] address) {
+        try {
+            return isPrivate(InetAddress.getByAddress(address));
+        } catch (UnknownHostException e) {
+            return true;
+        }
+    }
+
+    private static boolean isNat64(byte[] bytes) {
+        if (bytes[0] != 0 || bytes[1] != 0x64 || (bytes[2] & 0xff) != 0xff || (bytes[3] & 0xff) != 0x9b) {
+            return false;
+        }
+        for (int i = 4; i < 12; i++) {
+            if (bytes[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reserverer næste ledige tidspunkt for hosten. Giver hvor mange nanosekunder der er til da (0 eller mindre: nu).
+    private long reserveSlot(String host) {
+        if (host == null) {
+            return 0; // Afvises af checkAllowed
+        }
+        long now = System.nanoTime();
+        Long next = nextRequestPerHost.asMap().merge(host.toLowerCase(Locale.ROOT), now + perHostIntervalNanos,
+                (previous, ignored) -> Math.max(previous, now) + perHostIntervalNanos);
+        return next - perHostIntervalNanos - now;
+    }
+
+    // Antal hosts der pt. holdes styr på - til tests
+    long pacedHosts() {
+        nextRequestPerHost.cleanUp();
+        return nextRequestPerHost.estimatedSize();
+    }
+
+    private static Charset charset(String contentType) {
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index >= 0) {
+            try {
+                return Charset.forName(contentType.substring(index + 8).replace("\"", "").split(";")[0].trim());
+            } catch (IllegalArgumentException ignored) {
+                // Ukendt charset - falder tilbage til UTF-8
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    static String normalize(String link) {
+        if (link == null || link.isBlank()) {
+            return null;
+        }
+        String trimmed = link.trim();
+        if (!trimmed.contains("://")) {
+            trimmed = "https://" + trimmed;
+        }
+        return trimmed.length() <= 2048 ? trimmed : null;
+    }
+
+    static String hash(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unescape(String text) {
+        if (text == null) {
+            return null;
+        }
+        String result = text.replace("&quot;", "\"").replace("&#39;", "'").replace("&#039;", "'")
+                .replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&").trim();
+        return result.replaceAll("\\s+", " ");
+    }
+
+    private static String truncate(String text, int max) {
+        return text == null || text.length() <= max ? text : text.substring(0, max);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        delays.shutdownNow();
+        executor.shutdownNow();
+    }
+}
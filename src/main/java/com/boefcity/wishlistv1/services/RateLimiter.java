@@ -0,0 +1,156 @@
+package com.boefcity.wishlistv1.services;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Token bucket pr. nøgle (fx en IP eller et bruger id): burst requests med det samme, derefter permits pr. period.
+// Implementeret som GCRA: hver bucket er ét long - tidspunktet hvor den er helt fyldt igen - som opdateres med CAS.
+// Der er hverken låse eller et map pr. nøgle.
+// Nøglerne hashes til et fast antal stripes, så hukommelsen er den samme uanset hvor mange nøgler der ses.
+// To nøgler i samme stripe deler bucket. Med mange flere stripes end samtidigt aktive nøgler sker det sjældent.
+// Hash'et er SipHash-2-4 med en tilfældig nøgle pr. limiter, så en klient ikke kan regne ud hvilke nøgler der deler
+// stripe med en bestemt anden klient - heller ikke når den selv kan vælge mange nøgler (fx adresser i et IPv6 net).
+public class RateLimiter {
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final String name;
+    private final long interval;  // Nanosekunder mellem to tokens
+    private final long tolerance; // Hvor langt "fuld"-tidspunktet må ligge ude i fremtiden: (burst - 1) * interval
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long k0;
+    private final long k1;
+    private final LongSupplier clock;
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter(String name, int permits, Duration period, int burst, int stripes) {
+        this(name, permits, period, burst, stripes, System::nanoTime);
+    }
+
+    RateLimiter(String name, int permits, Duration period, int burst, int stripes, LongSupplier clock) {
+        if (permits < 1 || burst < 1 || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Rate limit " + name + " needs permits, burst and period above 0");
+        }
+        this.name = name;
+        this.interval = Math.max(1, period.toNanos() / permits);
+        this.tolerance = (burst - 1) * interval;
+        // Op til nærmeste potens af 2, så stripen findes med en maske
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.buckets = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.clock = clock;
+        SecureRandom random = new SecureRandom();
+        this.k0 = random.nextLong();
+        this.k1 = random.nextLong();
+        // nanoTime kan være negativ, så 0 er ikke nødvendigvis i fortiden - alle buckets starter fulde fra nu
+        long now = clock.getAsLong();
+        for (int i = 0; i < size; i++) {
+            buckets.set(i, now);
+        }
+    }
+
+    // Tager en token fra nøglens bucket. false hvis den er tom - så er intet ændret.
+    public boolean tryAcquire(long key) {
+        return acquire(stripe(sipHash(k0, k1, key)));
+    }
+
+    // Til nøgler klienten selv vælger, fx de rå bytes af en IP adresse (se RateLimitConfig.clientKey)
+    public boolean tryAcquire(byte[] key) {
+        return acquire(stripe(sipHash(k0, k1, key)));
+    }
+
+    private boolean acquire(int stripe) {
+        long now = clock.getAsLong();
+        while (true) {
+            long fullAt = buckets.get(stripe);
+            long next = Math.max(fullAt, now) + interval;
+            if (next - now > tolerance + interval) {
+                rejected.increment();
+                return false;
+            }
+            if (buckets.compareAndSet(stripe, fullAt, next)) {
+                return true;
+            }
+        }
+    }
+
+    // Højst så længe går der før en afvist klient får en ny token
+    public Duration retryAfter() {
+        return Duration.ofNanos(interval);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private int stripe(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // SipHash-2-4 af de 8 bytes i key (little endian)
+    static long sipHash(long k0, long k1, long key) {
+        long[] v = init(k0, k1);
+        compress(v, key);
+        compress(v, 8L << 56);
+        return finish(v);
+    }
+
+    static long sipHash(long k0, long k1, byte[] data) {
+        long[] v = init(k0, k1);
+        int blocks = data.length & ~7;
+        for (int i = 0; i < blocks; i += 8) {
+            compress(v, (long) LONG_LE.get(data, i));
+        }
+        // Sidste blok: de resterende bytes og længden i den øverste byte
+        long last = (long) data.length << 56;
+        for (int i = blocks; i < data.length; i++) {
+            last |= (data[i] & 0xFFL) << (8 * (i - blocks));
+        }
+        compress(v, last);
+        return finish(v);
+    }
+
+    private static long[] init(long k0, long k1) {
+        return new long[]{k0 ^ 0x736f6d6570736575L, k1 ^ 0x646f72616e646f6dL,
+                k0 ^ 0x6c7967656e657261L, k1 ^ 0x7465646279746573L};
+    }
+
+    private static void compress(long[] v, long m) {
+        v[3] ^= m;
+        round(v);
+        round(v);
+        v[0] ^= m;
+    }
+
+    private static long finish(long[] v) {
+        v[2] ^= 0xFF;
+        for (int i = 0; i < 4; i++) {
+            round(v);
+        }
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void round(long[] v) {
+        v[0] += v[1];
+        v[1] = Long.rotateLeft(v[1], 13) ^ v[0];
+        v[0] = Long.rotateLeft(v[0], 32);
+        v[2] += v[3];
+        v[3] = Long.rotateLeft(v[3], 16) ^ v[2];
+        v[0] += v[3];
+        v[3] = Long.rotateLeft(v[3], 21) ^ v[0];
+        v[2] += v[1];
+        v[1] = Long.rotateLeft(v[1], 17) ^ v[2];
+        v[2] = Long.rotateLeft(v[2], 32);
+    }
+}
@@ -0,0 +1,29 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+// Standard: brugerens id ligger i HttpSession (server.servlet.session.timeout).
+// Kræver sticky sessions hvis der kører flere instanser - se TokenAuthService for alternativet.
+@Service
+@ConditionalOnProperty(name = "auth.mode", havingValue = "session", matchIfMissing = true)
+public class SessionAuthService implements AuthService {
+
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    @Override
+    public Integer currentUserId(HttpServletRequest request) {
+        // Opretter ikke en session for brugere der ikke er logget ind
+        HttpSession session = request.getSession(false);
+        return session == null ? null : (Integer) session.getAttribute(USER_ID_ATTRIBUTE);
+    }
+
+    @Override
+    public void login(int userId, HttpServletRequest request, HttpServletResponse response) {
+        request.getSession().setAttribute(USER_ID_ATTRIBUTE, userId);
+    }
+}
@@ -0,0 +1,136 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.LinkPreviewService;
+import com.boefcity.wishlistv1.ShareService;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.dto.SharedPage;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+// Delte wishlists: hver bruger kan have ét hemmeligt token, og alle med linket /shared/{token} kan se wishlisten.
+// Delte sider hentes langt oftere end de ændres, så HTML'en renderes her (uden for Spring MVC) og gemmes i
+// SharedPageCache. En side der allerede er renderet koster hverken databasekald eller Thymeleaf.
+@Service
+@Timed(value = "wishlist.service", histogram = true) // Timer pr. metode - se MetricsConfig
+public class ShareServiceImpl implements ShareService {
+
+    // 32 tilfældige bytes = 256 bit, base64url uden padding giver 43 tegn
+    private static final int TOKEN_BYTES = 32;
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9_-]{43}");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final UserRepository userRepository;
+    private final ItemService itemService;
+    private final LinkPreviewService linkPreviewService;
+    private final SharedPageCache sharedPageCache;
+    private final ITemplateEngine templateEngine;
+    // Findes kun i en web-context - ikke fx i ServiceBenchmark
+    private final ObjectProvider<ResourceUrlProvider> resourceUrlProvider;
+
+    public ShareServiceImpl(UserRepository userRepository, ItemService itemService,
+                            LinkPreviewService linkPreviewService, SharedPageCache sharedPageCache,
+                            ITemplateEngine templateEngine, ObjectProvider<ResourceUrlProvider> resourceUrlProvider) {
+        this.userRepository = userRepository;
+        this.itemService = itemService;
+        this.linkPreviewService = linkPreviewService;
+        this.sharedPageCache = sharedPageCache;
+        this.templateEngine = templateEngine;
+        this.resourceUrlProvider = resourceUrlProvider;
+    }
+
+    @Override
+    public String findToken(int userId) {
+        return userRepository.findShareTokenByUserId(userId);
+    }
+
+    @Transactional
+    @Override
+    public String createToken(int userId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        replaceToken(userId, token);
+        return token;
+    }
+
+    @Transactional
+    @Override
+    public void stopSharing(int userId) {
+        replaceToken(userId, null);
+    }
+
+    private void replaceToken(int userId, String token) {
+        String old = userRepository.findShareTokenByUserId(userId);
+        if (userRepository.updateShareToken(userId, token) == 0) {
+            throw new EntityNotFoundException("User not found for this id: " + userId);
+        }
+        // Også det nye token, hvis nogen har nået at gætte på det og fået "findes ikke" cachet
+        afterCommit(() -> {
+            sharedPageCache.evictToken(old);
+            sharedPageCache.evictToken(token);
+        });
+    }
+
+    @Override
+    public Optional<SharedPage> findPage(String token, Integer after) {
+        // Alt der ikke kan være et token afvises uden at fylde cachen eller spørge databasen
+        if (token == null || !TOKEN_PATTERN.matcher(token).matches()) {
+            return Optional.empty();
+        }
+        return sharedPageCache.userFor(token, () -> userRepository.findUserIdByShareToken(token))
+                .map(userId -> {
+                    // Versionen læses før siden, så en side aldrig gemmes under en nyere version end dens data
+                    String version = itemService.wishlistVersion(userId);
+                    return sharedPageCache.getPage(userId, version, after, () -> render(token, userId, version, after));
+                });
+    }
+
+    private SharedPage render(String token, int userId, String version, Integer after) {
+        ItemPage page = itemService.findPageByUserUserId(userId, after, null, ItemService.MAX_PAGE_SIZE);
+        List<String> links = page.getItems().stream().map(ItemView::getLink).toList();
+
+        Context context = new Context(Locale.ENGLISH);
+        context.setVariable("owner", userRepository.findUserNameByUserId(userId).orElse(""));
+        context.setVariable("wishlist", page.getItems());
+        context.setVariable("page", page);
+        context.setVariable("token", token);
+        context.setVariable("previews", linkPreviewService.previewsFor(links));
+        // Templaten renderes uden for en request, så ResourceUrlEncodingFilter kan ikke give stylesheet'et sit hash
+        ResourceUrlProvider urls = resourceUrlProvider.getIfAvailable();
+        String itemsCss = urls != null ? urls.getForLookupPath("/items.css") : null;
+        context.setVariable("itemsCss", itemsCss != null ? itemsCss : "/items.css");
+        String html = templateEngine.process("sharedItems", context);
+        return new SharedPage(html, version, !linkPreviewService.isFetching(links));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.SharedPage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Cache af delte wishlists (se ShareServiceImpl): token -> bruger, og de færdigrenderede sider pr. bruger.
+// Siderne gemmes sammen med den wishlist version de er renderet fra. Ændres wishlisten (se WishlistCache.version),
+// renderes siden igen - og ItemChangedEvent fjerner brugerens sider med det samme, så de ikke fylder.
+// Begge caches udløber efter ttl, så et stoppet link også holder op med at virke på andre instanser.
+@Component
+public class SharedPageCache implements MeterBinder {
+
+    // Hvor mange sider (after cursorer) vi gemmer pr. bruger
+    private static final int MAX_PAGES_PER_USER = 16;
+    // Caffeine kan ikke gemme null - ukendte tokens caches som NO_USER, så gæt ikke går til databasen hver gang
+    private static final int NO_USER = -1;
+
+    private final Cache<String, Integer> usersByToken;
+    private final Cache<Integer, UserPages> pagesByUser;
+    private final LongAdder pageHits = new LongAdder();
+    private final LongAdder pageMisses = new LongAdder();
+
+    public SharedPageCache(@Value("${wishlist.share.max-users:1000}") long maxUsers,
+                           @Value("${wishlist.share.ttl:1m}") Duration ttl) {
+        this.usersByToken = Caffeine.newBuilder()
+                .maximumSize(maxUsers * 4)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.pagesByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Optional<Integer> userFor(String token, Supplier<Optional<Integer>> loader) {
+        int userId = usersByToken.get(token, key -> loader.get().orElse(NO_USER));
+        return userId == NO_USER ? Optional.empty() : Optional.of(userId);
+    }
+
+    public void evictToken(String token) {
+        if (token != null) {
+            usersByToken.invalidate(token);
+        }
+    }
+
+    // Som WishlistCache.getOrLoad: entry'et hentes før der renderes, så en side renderet mens brugeren
+    // invalideres ender i et entry der allerede er fjernet. Ufærdige sider (se SharedPage.complete) gemmes ikke.
+    public SharedPage getPage(int userId, String version, Integer after, Supplier<SharedPage> renderer) {
+        UserPages entry = pagesByUser.asMap().compute(userId,
+                (id, old) -> old != null && old.version.equals(version) ? old : new UserPages(version));
+        String key = String.valueOf(after);
+        SharedPage cached = entry.pages.get(key);
+        if (cached != null) {
+            pageHits.increment();
+            return cached;
+        }
+        pageMisses.increment();
+        SharedPage rendered = renderer.get();
+        if (rendered.isComplete()) {
+            if (entry.pages.size() >= MAX_PAGES_PER_USER) {
+                entry.pages.clear();
+            }
+            entry.pages.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    public void evictPages(int userId) {
+        pagesByUser.invalidate(userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void itemChanged(ItemChangedEvent event) {
+        evictPages(event.getUserId());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, usersByToken, "share-tokens");
+        // Siderne tælles selv, som wishlists i WishlistCache
+        FunctionCounter.builder("cache.gets", pageHits, LongAdder::sum)
+                .tags("cache", "shared-pages", "result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", pageMisses, LongAdder::sum)
+                .tags("cache", "shared-pages", "result", "miss").register(registry);
+        Gauge.builder("cache.size", pagesByUser, Cache::estimatedSize)
+                .tags("cache", "shared-pages").register(registry);
+    }
+
+    private static class UserPages {
+        private final String version;
+        private final ConcurrentMap<String, SharedPage> pages = new ConcurrentHashMap<>();
+
+        UserPages(String version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.AuthService;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Stateless login (auth.mode=token): brugerens id og udløbstidspunkt ligger i en HMAC-signeret cookie,
+// "<userId>.<udløb i epoch sekunder>.<signatur>". Den kontrolleres uden opslag i session eller database,
+// så serveren ikke holder noget pr. bruger og alle instanser kan tage alle requests.
+// Cookien fornyes når mere end halvdelen af levetiden er gået (se TokenAuthConfig), ligesom en session timeout.
+@Service
+@ConditionalOnProperty(name = "auth.mode", havingValue = "token")
+public class TokenAuthService implements AuthService {
+
+    public static final String COOKIE_NAME = "WISHLIST_AUTH";
+
+    private final AuthTokenSigner signer;
+    private final Duration ttl;
+    private final boolean secureCookie;
+
+    public TokenAuthService(AuthTokenSigner signer,
+                            @Value("${auth.token.ttl:30m}") Duration ttl,
+                            @Value("${auth.token.secure-cookie:false}") boolean secureCookie) {
+        this.signer = signer;
+        this.ttl = ttl;
+        this.secureCookie = secureCookie;
+    }
+
+    @Override
+    public Integer currentUserId(HttpServletRequest request) {
+        Token token = readToken(request, Instant.now());
+        return token == null ? null : token.userId;
+    }
+
+    @Override
+    public void login(int userId, HttpServletRequest request, HttpServletResponse response) {
+        writeCookie(response, issue(userId, Instant.now()));
+    }
+
+    public void renewIfNeeded(HttpServletRequest request, HttpServletResponse response) {
+        Instant now = Instant.now();
+        Token token = readToken(request, now);
+        if (token != null && token.expiresAt.minus(ttl.dividedBy(2)).isBefore(now)) {
+            writeCookie(response, issue(token.userId, now));
+        }
+    }
+
+    String issue(int userId, Instant now) {
+        return signer.sign(AuthTokenSigner.Purpose.AUTH, userId + "." + now.plus(ttl).getEpochSecond());
+    }
+
+    Token verify(String value, Instant now) {
+        String payload = signer.verify(AuthTokenSigner.Purpose.AUTH, value);
+        if (payload == null) {
+            return null;
+        }
+        int dot = payload.indexOf('.');
+        try {
+            int userId = Integer.parseInt(payload.substring(0, dot));
+            Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(payload.substring(dot + 1)));
+            return expiresAt.isAfter(now) ? new Token(userId, expiresAt) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Token readToken(HttpServletRequest request, Instant now) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                return verify(cookie.getValue(), now);
+            }
+        }
+        return null;
+    }
+
+    private void writeCookie(HttpServletResponse response, String value) {
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, value)
+                .httpOnly(true)
+                .secure(secureCookie)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(ttl)
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Token {
+        private final int userId;
+        private final Instant expiresAt;
+    }
+}
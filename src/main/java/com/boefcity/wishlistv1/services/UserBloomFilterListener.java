@@ -0,0 +1,22 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.entity.User;
+import jakarta.persistence.PostPersist;
+import org.springframework.stereotype.Component;
+
+// JPA entity listener (se User). Tilføjer alle nye brugere til UsernameBloomFilter,
+// også dem der gemmes direkte via UserRepository og ikke gennem UserService.
+@Component
+public class UserBloomFilterListener {
+
+    private final UsernameBloomFilter usernameBloomFilter;
+
+    public UserBloomFilterListener(UsernameBloomFilter usernameBloomFilter) {
+        this.usernameBloomFilter = usernameBloomFilter;
+    }
+
+    @PostPersist
+    public void userPersisted(User user) {
+        usernameBloomFilter.put(user.getUserName());
+    }
+}
@@ -1,38 +1,130 @@
 package com.boefcity.wishlistv1.services;
 
+import com.boefcity.wishlistv1.UserNameTakenException;
 import com.boefcity.wishlistv1.UserService;
 import com.boefcity.wishlistv1.entity.User;
 import com.boefcity.wishlistv1.repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "wishlist.service", histogram = true) // Timer pr. metode - se MetricsConfig
 public class UserServiceImpl implements UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserServiceImpl.class);
+    private static final int REFRESH_BATCH_SIZE = 1000;
+
     private final UserRepository userRepository;
+    private final UsernameBloomFilter usernameBloomFilter;
+    private final Duration refreshInterval;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "username-bloom-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Kun rørt af opstarten og derefter af refresher-tråden
+    private int refreshedUpTo;
+    private int refreshFrom;
 
     @Autowired
-    public UserServiceImpl(final UserRepository userRepository) {
+    public UserServiceImpl(final UserRepository userRepository, final UsernameBloomFilter usernameBloomFilter,
+                           @Value("${user.bloom.refresh-interval:5s}") Duration refreshInterval) {
         this.userRepository = userRepository;
+        this.usernameBloomFilter = usernameBloomFilter;
+        this.refreshInterval = refreshInterval;
+    }
+
+    // Fylder bloom filteret med eksisterende brugernavne. Nye brugere på denne instans tilføjes af
+    // UserBloomFilterListener, brugere oprettet på andre instanser hentes hvert refresh-interval.
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadUsernameBloomFilter() {
+        Integer maxUserId = userRepository.findMaxUserId();
+        refreshedUpTo = maxUserId != null ? maxUserId : 0;
+        refreshFrom = refreshedUpTo;
+        try (Stream<String> userNames = userRepository.streamAllUserNames()) {
+            userNames.forEach(usernameBloomFilter::put);
+        }
+        usernameBloomFilter.markLoaded();
+        long interval = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refreshUsernameBloomFilter, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Henter brugere med id over det vi har set. Et id kan være tildelt før forrige refresh men committes efter,
+    // så hvert interval af id'er læses i to refreshes i træk. Kører uden transaktion, dvs. mod primary og ikke en replica.
+    public void refreshUsernameBloomFilter() {
+        try {
+            int highest = refreshedUpTo;
+            List<UserRepository.UserNameRow> rows;
+            int after = refreshFrom;
+            do {
+                rows = userRepository.findUserNamesAfter(after, Limit.of(REFRESH_BATCH_SIZE));
+                for (UserRepository.UserNameRow row : rows) {
+                    usernameBloomFilter.put(row.getUserName());
+                    after = row.getUserId();
+                }
+                highest = Math.max(highest, after);
+            } while (rows.size() == REFRESH_BATCH_SIZE);
+            refreshFrom = refreshedUpTo;
+            refreshedUpTo = highest;
+        } catch (DataAccessException e) {
+            // Prøves igen næste gang - indtil da kan nye brugere fra andre instanser få "findes ikke"
+            log.warn("Could not refresh username bloom filter: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
     }
 
     @Override
     public User findByUserName(String userName) {
+        if (!usernameBloomFilter.mightContain(userName)) {
+            return null;
+        }
         return userRepository.findByUserName(userName);
     }
 
     @Override
     public User saveUser(User user) {
-        if(userRepository.findByUserName(user.getUserName()) != null) {
-            throw new RuntimeException("Username already exists.");
+        // Kun når filteret siger "måske" skal vi spørge databasen
+        if (usernameBloomFilter.mightContain(user.getUserName())
+                && userRepository.findByUserName(user.getUserName()) != null) {
+            throw new UserNameTakenException(user.getUserName());
+        }
+        try {
+            return userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // To samtidige registreringer med samme navn - unique constraint'en på user_name fanger den anden
+            throw new UserNameTakenException(user.getUserName());
         }
-        return userRepository.save(user);
     }
 
     @Override
     public boolean checkLogin(String userName, String password) {
+        if (!usernameBloomFilter.mightContain(userName)) {
+            return false;
+        }
         User user = userRepository.findByUserName(userName);
         if(user != null) {
             //Dette tjek returnerer brugerens password - for at opretholde korrekt sikkerhedsstandard, burde tjekket returnere en hashcode.
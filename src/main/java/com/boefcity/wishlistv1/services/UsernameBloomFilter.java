@@ -0,0 +1,93 @@
+package com.boefcity.wishlistv1.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom filter over alle brugernavne. Kan svare "findes helt sikkert ikke" uden et databasekald,
+// men "findes måske" skal altid bekræftes i databasen. Fyldes ved opstart (se UserServiceImpl)
+// og ved hver ny bruger (se UserBloomFilterListener). Lock-free, så den kan deles af alle request-tråde.
+@Component
+public class UsernameBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    // Indtil filteret er fyldt fra databasen svarer vi altid "måske"
+    private volatile boolean loaded;
+
+    public UsernameBloomFilter(@Value("${user.bloom.expected-users:100000}") long expectedUsers,
+                               @Value("${user.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        long n = Math.max(1, expectedUsers);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    public void put(String userName) {
+        if (userName == null) {
+            return;
+        }
+        long hash = hash(userName);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(String userName) {
+        if (!loaded) {
+            return true;
+        }
+        if (userName == null) {
+            return false;
+        }
+        long hash = hash(userName);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void markLoaded() {
+        this.loaded = true;
+    }
+
+    private long index(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    // Brugernavne sammenlignes uden forskel på store og små bogstaver (MySQL's standard collation),
+    // så filteret normaliserer. Det kan kun give flere "måske", aldrig forkerte "nej".
+    private static long hash(String userName) {
+        String normalized = userName.toLowerCase(Locale.ROOT);
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < normalized.length(); i++) {
+            h ^= normalized.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // splitmix64 finalizer, så begge 32-bit halvdele er godt fordelt
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
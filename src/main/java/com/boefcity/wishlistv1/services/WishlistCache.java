@@ -0,0 +1,184 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.config.ReplicaRoutingDataSource;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.entity.Item;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Cache af brugernes wishlists og enkelte items, så gentagne visninger af /items ikke går til databasen.
+// Begge caches er begrænset i størrelse og udløber efter en TTL. Se ItemServiceImpl for invalidering.
+// Statistikken eksporteres til Micrometer (cache.* metrics med cache=wishlists/items).
+// Derudover holdes en version pr. bruger, som skifter når brugerens wishlist invalideres (se version).
+// Cachen fyldes altid fra primary: en replica der er bagud ville ellers gemme data fra før brugerens ændring.
+// Cachen og versionerne findes kun i denne instans, og kun ændringer lavet her invaliderer dem. Med flere instanser
+// uden sticky routing (fx auth.mode=token) kan en anden instans vise en side - og svare 304 på dens ETag - der er
+// op til ttl gammel. Derfor er ttl kort som standard. Den kan sættes op når samme bruger altid rammer samme instans.
+@Component
+public class WishlistCache implements MeterBinder {
+
+    // Hvor mange forskellige sider (cursor/size kombinationer) vi gemmer pr. bruger
+    private static final int MAX_PAGES_PER_USER = 32;
+    private static final String ALL_ITEMS = "all";
+
+    private final Cache<Integer, UserEntry> wishlistsByUser;
+    private final Cache<Integer, Item> itemsById;
+    private final LongAdder wishlistHits = new LongAdder();
+    private final LongAdder wishlistMisses = new LongAdder();
+    private final Cache<Integer, Long> versionsByUser;
+    // Versionerne tages fra én tæller. En bruger der er faldet ud af versionsByUser får et nyt tal,
+    // som aldrig er givet ud før - så en gammel ETag kan ikke matche ved et tilfælde.
+    private final AtomicLong versionSequence = new AtomicLong();
+    // Skifter ved hver opstart, da tælleren starter forfra (og nye templates kan give en anden side)
+    private final String epoch = Long.toHexString(new SecureRandom().nextLong() >>> 16);
+
+    public WishlistCache(@Value("${wishlist.cache.max-users:10000}") long maxUsers,
+                         @Value("${wishlist.cache.max-items:50000}") long maxItems,
+                         @Value("${wishlist.cache.ttl:10s}") Duration ttl) {
+        this.wishlistsByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.itemsById = Caffeine.newBuilder()
+                .maximumSize(maxItems)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Udløber sammen med wishlisten, så en ETag heller ikke kan matche en ændring fra en anden instans længere end ttl
+        this.versionsByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public String version(int userId) {
+        return epoch + "-" + versionsByUser.get(userId, id -> versionSequence.incrementAndGet());
+    }
+
+    public List<Item> getWishlist(int userId, Supplier<List<Item>> loader) {
+        return getOrLoad(userId, ALL_ITEMS, loader);
+    }
+
+    public ItemPage getPage(int userId, Integer after, Integer before, int size, Supplier<ItemPage> loader) {
+        return getOrLoad(userId, after + ":" + before + ":" + size, loader);
+    }
+
+    public Optional<Item> getItem(int id, Supplier<Optional<Item>> loader) {
+        // Items der ikke findes caches ikke (loaderen returnerer null)
+        return Optional.ofNullable(itemsById.get(id, key -> ReplicaRoutingDataSource.onPrimary(loader).orElse(null)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getOrLoad(int userId, String key, Supplier<T> loader) {
+        // Entry'et hentes før databasekaldet. Bliver brugeren invalideret imens, ender resultatet
+        // i et entry der allerede er fjernet fra cachen, så vi aldrig gemmer en forældet wishlist.
+        UserEntry entry = wishlistsByUser.get(userId, id -> new UserEntry());
+        Object cached = entry.values.get(key);
+        if (cached != null) {
+            wishlistHits.increment();
+            return (T) cached;
+        }
+        wishlistMisses.increment();
+        T loaded = ReplicaRoutingDataSource.onPrimary(loader);
+        if (entry.values.size() >= MAX_PAGES_PER_USER) {
+            entry.values.clear();
+        }
+        entry.values.put(key, loaded);
+        return loaded;
+    }
+
+    // Fjerner brugerens wishlist og evt. et enkelt item og giver brugeren en ny version. Sker først når
+    // transaktionen er committed, ellers kunne en samtidig læsning nå at cache de gamle data igen
+    // (eller sende de gamle data med den nye version som ETag).
+    public void evictAfterCommit(Integer userId, Integer itemId) {
+        afterCommit(() -> evict(userId, itemId));
+    }
+
+    public void evictItemsAfterCommit(Integer userId, Collection<Integer> itemIds) {
+        afterCommit(() -> {
+            evict(userId, null);
+            itemsById.invalidateAll(itemIds);
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public void evict(Integer userId, Integer itemId) {
+        if (userId != null) {
+            wishlistsByUser.invalidate(userId);
+            // Efter wishlisten, så den nye version aldrig kan se den gamle wishlist i cachen
+            versionsByUser.invalidate(userId);
+        }
+        if (itemId != null) {
+            itemsById.invalidate(itemId);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(wishlistHits.sum(), wishlistMisses.sum(), wishlistsByUser.stats().evictionCount(),
+                itemsById.stats().hitCount(), itemsById.stats().missCount(), itemsById.stats().evictionCount());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, itemsById, "items");
+        // Wishlist-siderne tælles selv (se getOrLoad), da Caffeine kun ser opslaget af brugerens entry
+        FunctionCounter.builder("cache.gets", wishlistHits, LongAdder::sum)
+                .tags("cache", "wishlists", "result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", wishlistMisses, LongAdder::sum)
+                .tags("cache", "wishlists", "result", "miss").register(registry);
+        FunctionCounter.builder("cache.evictions", wishlistsByUser, cache -> cache.stats().evictionCount())
+                .tags("cache", "wishlists").register(registry);
+        Gauge.builder("cache.size", wishlistsByUser, Cache::estimatedSize)
+                .tags("cache", "wishlists").register(registry);
+    }
+
+    private static class UserEntry {
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Stats {
+        private final long wishlistHits;
+        private final long wishlistMisses;
+        private final long wishlistEvictions;
+        private final long itemHits;
+        private final long itemMisses;
+        private final long itemEvictions;
+    }
+}
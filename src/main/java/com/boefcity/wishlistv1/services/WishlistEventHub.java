@@ -0,0 +1,219 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.WishlistEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Live opdateringer af wishlists (GET /items/events): hver ændring der committes (ItemChangedEvent) sendes videre
+// til alle brugerens åbne forbindelser - andre faner og enheder ser den uden at hente /items igen.
+// - den der committer lægger kun eventet i hver forbindelses kø og venter aldrig på en klient
+// - hver forbindelse har sin egen kø med plads til buffer-size events, og sendes fra sin egen virtual thread
+// - kan en forbindelse ikke følge med (køen er fuld - eller en bulk sletning gav flere events end der er plads til),
+//   lukkes den i stedet for at holde på hukommelse.
+//   Browserens EventSource forbinder selv igen, og siden ved så at den skal hentes forfra (se items.html)
+// - alle forbindelser får en heartbeat hvert heartbeat-interval, så døde forbindelser opdages og proxies ikke lukker dem
+// Kun ændringer lavet på denne instans sendes - med flere instanser skal hub'en fødes fra en fælles kanal.
+@Component
+public class WishlistEventHub implements MeterBinder {
+
+    // Hvordan et event kommer ud til klienten. send og heartbeat må gerne blokere, close kaldes højst én gang.
+    public interface Sink {
+        void send(WishlistEvent event) throws IOException;
+
+        void heartbeat() throws IOException;
+
+        void close();
+    }
+
+    private static final WishlistEvent HEARTBEAT = new WishlistEvent(0, "heartbeat", null, null, null, null);
+
+    private final int bufferSize;
+    private final int maxPerUser;
+    private final Duration timeout;
+    private final ConcurrentMap<Integer, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public WishlistEventHub(@Value("${wishlist.events.buffer-size:32}") int bufferSize,
+                            @Value("${wishlist.events.max-per-user:8}") int maxPerUser,
+                            @Value("${wishlist.events.timeout:30m}") Duration timeout,
+                            @Value("${wishlist.events.heartbeat-interval:20s}") Duration heartbeatInterval) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxPerUser = maxPerUser;
+        this.timeout = timeout;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wishlist-event-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = heartbeatInterval.toMillis();
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Hvor længe en forbindelse holdes åben - derefter forbinder EventSource igen
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    // null hvis brugeren allerede har max-per-user forbindelser åbne
+    public Subscription subscribe(int userId, Sink sink) {
+        Subscription subscription = new Subscription(userId, sink);
+        AtomicBoolean added = new AtomicBoolean();
+        subscriptions.compute(userId, (id, set) -> {
+            Set<Subscription> users = set != null ? set : ConcurrentHashMap.newKeySet();
+            if (users.size() < maxPerUser) {
+                users.add(subscription);
+                added.set(true);
+            }
+            return users.isEmpty() ? null : users;
+        });
+        if (!added.get()) {
+            return null;
+        }
+        connections.incrementAndGet();
+        return subscription;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void itemChanged(ItemChangedEvent event) {
+        Set<Subscription> users = subscriptions.get(event.getUserId());
+        if (users == null) {
+            return;
+        }
+        WishlistEvent wishlistEvent = new WishlistEvent(sequence.incrementAndGet(),
+                event.getType().name().toLowerCase(Locale.ROOT), event.getItemId(),
+                event.getName(), event.getDescription(), event.getLink());
+        users.forEach(subscription -> subscription.offer(wishlistEvent));
+    }
+
+    private void heartbeat() {
+        subscriptions.values().forEach(users -> users.forEach(subscription -> subscription.offer(HEARTBEAT)));
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        subscriptions.values().forEach(users -> List.copyOf(users).forEach(Subscription::drop));
+        senders.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("wishlist.events.connections", connections, AtomicInteger::get)
+                .description("Open live update connections").register(registry);
+        FunctionCounter.builder("wishlist.events.sent", sent, LongAdder::sum)
+                .description("Wishlist events and heartbeats written to clients").register(registry);
+        FunctionCounter.builder("wishlist.events.dropped", dropped, LongAdder::sum)
+                .description("Connections closed because the client could not keep up").register(registry);
+    }
+
+    // En åben forbindelse
+    public final class Subscription {
+        private final int userId;
+        private final Sink sink;
+        private final ArrayBlockingQueue<WishlistEvent> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscription(int userId, Sink sink) {
+            this.userId = userId;
+            this.sink = sink;
+        }
+
+        void offer(WishlistEvent event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                dropped.increment();
+                drop();
+                return;
+            }
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::sendQueued);
+                } catch (RejectedExecutionException e) {
+                    unsubscribe(); // Lukker ned
+                }
+            }
+        }
+
+        // Højst én tråd sender pr. forbindelse, så events kommer frem i rækkefølge
+        private void sendQueued() {
+            try {
+                do {
+                    WishlistEvent event;
+                    while (!closed.get() && (event = queue.poll()) != null) {
+                        if (event == HEARTBEAT) {
+                            sink.heartbeat();
+                        } else {
+                            sink.send(event);
+                        }
+                        sent.increment();
+                    }
+                    sending.set(false);
+                    // Et event kan være lagt i køen efter poll men før sending blev false
+                } while (!closed.get() && !queue.isEmpty() && sending.compareAndSet(false, true));
+            } catch (IOException | RuntimeException e) {
+                drop(); // Klienten er væk
+            }
+        }
+
+        // Når forbindelsen er lukket af klienten, serveren eller timeout
+        public void unsubscribe() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.computeIfPresent(userId, (id, users) -> {
+                    users.remove(this);
+                    return users.isEmpty() ? null : users;
+                });
+                connections.decrementAndGet();
+                queue.clear();
+            }
+        }
+
+        // Lukker forbindelsen fra serveren. close kan blokere hvis en send hænger, så det sker ikke på kalderens tråd.
+        void drop() {
+            if (closed.get()) {
+                return;
+            }
+            unsubscribe();
+            try {
+                senders.execute(sink::close);
+            } catch (RejectedExecutionException e) {
+                sink.close();
+            }
+        }
+    }
+}
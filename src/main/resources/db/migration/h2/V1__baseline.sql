@@ -0,0 +1,19 @@
+-- H2 udgaven af mysql/V1__baseline.sql - bruges af tests og benchmarks
+create table users (
+    user_id integer generated by default as identity,
+    user_name varchar(255) not null,
+    user_password varchar(255) not null,
+    primary key (user_id)
+);
+
+create table items (
+    id integer generated by default as identity,
+    user_id integer,
+    description varchar(255),
+    link varchar(255),
+    name varchar(255) not null,
+    primary key (id)
+);
+
+alter table users add constraint UK_k8d0f2n7n88w1a16yhua64onx unique (user_name);
+alter table items add constraint FKft8pmhndq1kntvyfaqcybhxvx foreign key (user_id) references users (user_id);
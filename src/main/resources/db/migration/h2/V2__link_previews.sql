@@ -0,0 +1,10 @@
+-- Se mysql/V2__link_previews.sql
+create table link_previews (
+    available boolean not null,
+    fetched_at timestamp(6) with time zone not null,
+    url_hash varchar(64) not null,
+    title varchar(512),
+    image_url varchar(2048),
+    url varchar(2048) not null,
+    primary key (url_hash)
+);
@@ -0,0 +1,3 @@
+-- Se mysql/V3__item_version.sql
+alter table items add column version integer not null default 0;
+alter table items alter column version drop default;
@@ -0,0 +1,6 @@
+-- Se mysql/V4__replica_heartbeat.sql
+create table replica_heartbeat (
+    id integer not null,
+    beat_millis bigint not null,
+    primary key (id)
+);
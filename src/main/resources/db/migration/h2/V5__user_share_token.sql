@@ -0,0 +1,3 @@
+-- Se mysql/V5__user_share_token.sql
+alter table users add column share_token varchar(43);
+alter table users add constraint UK_o7nc30e08wcuu1ck6eulvroh0 unique (share_token);
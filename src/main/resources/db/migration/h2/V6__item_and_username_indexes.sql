@@ -0,0 +1,5 @@
+-- Se mysql/V6__item_and_username_indexes.sql
+create index idx_items_user_id_id on items (user_id, id);
+
+-- H2's svar på en case-insensitive collation. Tjekket for dubletter er kun i mysql udgaven - H2 databaserne starter tomme.
+alter table users alter column user_name set data type varchar_ignorecase(255);
@@ -0,0 +1,7 @@
+-- Se mysql/V7__item_rank.sql
+alter table items add column item_rank bigint not null default 0;
+update items set item_rank = id * 65536;
+alter table items alter column item_rank drop default;
+
+create index idx_items_user_id_rank on items (user_id, item_rank, id);
+drop index idx_items_user_id_id;
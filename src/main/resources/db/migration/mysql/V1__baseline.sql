@@ -0,0 +1,22 @@
+-- Skemaet som Hibernate (ddl-auto=update) lavede det, inden vi skiftede til migrations.
+-- En database der allerede har tabellerne får V1 markeret som kørt (spring.flyway.baseline-on-migrate) og starter ved V2.
+-- Derfor skal V1 være præcis det skema de eksisterende databaser har - alt nyere hører til i V2 og frem.
+-- Constraint-navnene er Hibernates, så nye og eksisterende databaser er ens.
+create table users (
+    user_id integer not null auto_increment,
+    user_name varchar(255) not null,
+    user_password varchar(255) not null,
+    primary key (user_id)
+) engine=InnoDB;
+
+create table items (
+    id integer not null auto_increment,
+    user_id integer,
+    description varchar(255),
+    link varchar(255),
+    name varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table users add constraint UK_k8d0f2n7n88w1a16yhua64onx unique (user_name);
+alter table items add constraint FKft8pmhndq1kntvyfaqcybhxvx foreign key (user_id) references users (user_id);
@@ -0,0 +1,10 @@
+-- Titel og billede hentet fra items links (LinkPreview, se LinkPreviewServiceImpl)
+create table link_previews (
+    available bit not null,
+    fetched_at timestamp(6) not null,
+    url_hash varchar(64) not null,
+    title varchar(512),
+    image_url varchar(2048),
+    url varchar(2048) not null,
+    primary key (url_hash)
+) engine=InnoDB;
@@ -0,0 +1,3 @@
+-- Optimistic locking af items (Item.version). Eksisterende items starter ved version 0.
+alter table items add column version integer not null default 0;
+alter table items alter column version drop default;
@@ -0,0 +1,7 @@
+-- Heartbeat-rækken ReplicaRoutingDataSource skriver på primary og læser på replicas for at måle hvor langt de er bagud.
+-- Tabellen laves her og ikke af appen, så den når replicas via replikeringen ligesom resten af skemaet.
+create table replica_heartbeat (
+    id integer not null,
+    beat_millis bigint not null,
+    primary key (id)
+) engine=InnoDB;
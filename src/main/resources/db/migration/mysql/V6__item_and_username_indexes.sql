@@ -0,0 +1,37 @@
+-- Brugernavne der kun adskiller sig ved store/små bogstaver ("Bob" og "bob") kan ikke begge være i det unikke index
+-- med den case-insensitive collation nedenfor (kun muligt hvis databasens collation var case-sensitive).
+-- Så ville alter table stoppe halvvejs med en "Duplicate entry" fejl. Tjekket her stopper i stedet migrationen før
+-- noget er ændret, med navnet på en af dubletterne. Omdøb eller slet dubletterne i hånden, fjern den fejlede
+-- V6 række i flyway_schema_history (flyway repair) og start appen igen.
+drop procedure if exists check_user_name_case_duplicates;
+
+DELIMITER $$
+create procedure check_user_name_case_duplicates()
+begin
+    declare duplicate varchar(255);
+    declare message varchar(128);
+    set duplicate = (select min(user_name) from users
+                     group by convert(user_name using utf8mb4) collate utf8mb4_0900_as_ci
+                     having count(*) > 1
+                     limit 1);
+    if duplicate is not null then
+        set message = concat('users.user_name has names that differ only by case, e.g. ', left(duplicate, 40),
+                             '. Rename them before migrating');
+        signal sqlstate '45000' set message_text = message;
+    end if;
+end$$
+DELIMITER ;
+
+call check_user_name_case_duplicates();
+drop procedure check_user_name_case_duplicates;
+
+-- Wishlists hentes med "where user_id = ? order by id" (findByUserUserId, findViewsByUserId* og eksporten).
+-- Med (user_id, id) kan MySQL læse rækkerne i rækkefølge direkte fra indexet - også "id > ?" og "id < ?" ved paging.
+create index idx_items_user_id_id on items (user_id, id);
+-- Fremmednøglen bruger nu det nye index, så det index MySQL lavede til den alene er overflødigt
+alter table items drop index FKft8pmhndq1kntvyfaqcybhxvx;
+
+-- Brugernavne er uafhængige af store/små bogstaver (UsernameBloomFilter gemmer dem med små bogstaver).
+-- Med en case-insensitive collation bruger findByUserName det unikke index på user_name direkte, og "Bob" og "bob"
+-- kan ikke begge oprettes. Accent-sensitive (as_ci), så "José" og "Jose" stadig er to forskellige navne.
+alter table users modify user_name varchar(255) character set utf8mb4 collate utf8mb4_0900_as_ci not null;
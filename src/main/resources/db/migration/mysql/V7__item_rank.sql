@@ -0,0 +1,11 @@
+-- Brugerdefineret rækkefølge (Item.rank). Eksisterende items beholder deres rækkefølge (efter id), med samme
+-- afstand mellem hinanden som ItemRankRebalancer.GAP, så de kan flyttes uden at andre items skal ændres.
+alter table items add column item_rank bigint not null default 0;
+update items set item_rank = id * 65536;
+alter table items alter column item_rank drop default;
+
+-- Wishlists vises og eksporteres med "where user_id = ? order by item_rank, id", og paging søger fra en (rank, id).
+-- Med (user_id, item_rank, id) læses begge dele i rækkefølge direkte fra indexet, ligesom før med (user_id, id).
+create index idx_items_user_id_rank on items (user_id, item_rank, id);
+-- (user_id, id) fra V6 bruges ikke længere, og fremmednøglen på user_id dækkes af det nye index
+drop index idx_items_user_id_id on items;
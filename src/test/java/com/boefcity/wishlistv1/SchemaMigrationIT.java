@@ -0,0 +1,105 @@
+package com.boefcity.wishlistv1;
+
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Skemaet i tests kommer fra db/migration/h2, og Hibernate validerer det mod entities (ddl-auto=validate)
+@SpringBootTest
+public class SchemaMigrationIT {
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testAllMigrationsAreApplied() {
+        assertEquals(0, flyway.info().pending().length);
+        assertEquals("7", flyway.info().current().getVersion().getVersion());
+    }
+
+    // En database fra før migrations (baseline skemaet, lavet af ddl-auto=update) får V1 markeret som kørt og resten kørt
+    @Test
+    void testExistingBaselineDatabaseIsMigrated() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:baseline-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate existing = new JdbcTemplate(dataSource);
+        existing.execute("runscript from 'classpath:db/migration/h2/V1__baseline.sql'");
+        existing.update("insert into users (user_id, user_name, user_password) values (1, 'old', 'pass')");
+        existing.update("insert into items (id, name, user_id) values (3, 'Old item', 1)");
+
+        Flyway migrations = Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/h2")
+                .baselineOnMigrate(true).load();
+        migrations.migrate();
+
+        assertEquals("7", migrations.info().current().getVersion().getVersion());
+        assertEquals(Map.of("VERSION", 0, "ITEM_RANK", 3L * 65536),
+                existing.queryForMap("select version, item_rank from items where id = 3"));
+        assertNull(existing.queryForObject("select share_token from users where user_id = 1", String.class));
+    }
+
+    @Test
+    void testUserIdAndIdIndexIsReplacedByRankIndex() {
+        List<String> columns = jdbcTemplate.queryForList(
+                "select c.column_name from information_schema.index_columns c " +
+                        "where c.table_name = 'ITEMS' and c.index_name = 'IDX_ITEMS_USER_ID_ID' order by c.ordinal_position",
+                String.class);
+        assertEquals(List.of(), columns);
+    }
+
+    @Test
+    void testItemsHaveUserIdAndRankIndex() {
+        List<String> columns = jdbcTemplate.queryForList(
+                "select c.column_name from information_schema.index_columns c " +
+                        "where c.table_name = 'ITEMS' and c.index_name = 'IDX_ITEMS_USER_ID_RANK' order by c.ordinal_position",
+                String.class);
+        assertEquals(List.of("USER_ID", "ITEM_RANK", "ID"), columns);
+    }
+
+    @Test
+    void testUserNameLookupIgnoresCase() {
+        userService.saveUser(newUser("CaseUser"));
+
+        assertNotNull(userRepository.findByUserName("caseuser"));
+        assertThrows(UserNameTakenException.class, () -> userService.saveUser(newUser("CASEUSER")));
+    }
+
+    private static User newUser(String userName) {
+        User user = new User();
+        user.setUserName(userName);
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        return user;
+    }
+}
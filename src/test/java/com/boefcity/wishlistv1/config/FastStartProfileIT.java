@@ -0,0 +1,58 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+
+// Appen med fast-start profilen (lazy init) - se application-fast-start.properties og LazyInitializationConfig
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fast-start")
+public class FastStartProfileIT {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testServicesAreLazyButMigrationsRunAtStartup() {
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+
+        assertTrue(beanFactory.getBeanDefinition("itemServiceImpl").isLazyInit());
+        assertFalse(beanFactory.getBeanDefinition("flywayInitializer").isLazyInit());
+    }
+
+    @Test
+    void testRegisterAndLoginWork() throws Exception {
+        mockMvc.perform(post("/register")
+                        .param("userName", "fastStartUser")
+                        .param("userPassword", "pass"))
+                .andExpect(redirectedUrl("/login"));
+
+        mockMvc.perform(post("/loginUser")
+                        .param("userName", "fastStartUser")
+                        .param("password", "pass"))
+                .andExpect(redirectedUrl("/items"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.boefcity.wishlistv1.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// To (eller tre) H2 databaser i hukommelsen. Hver har en tabel der siger hvilken database man har fat i,
+// og "replikering" af heartbeat'en gøres i hånden, så testen bestemmer hvor langt en replica er bagud.
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private final Map<String, DataSource> replicas = new LinkedHashMap<>();
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (routing != null) {
+            routing.close();
+        }
+        for (DataSource dataSource : replicas.values()) {
+            shutdown(dataSource);
+        }
+        shutdown(primary);
+    }
+
+    private static void shutdown(DataSource dataSource) {
+        try {
+            new JdbcTemplate(dataSource).execute("shutdown");
+        } catch (DataAccessException e) {
+            // Allerede lukket af testen
+        }
+    }
+
+    private static DataSource database(String name) {
+        String url = "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        JdbcDataSource setup = new JdbcDataSource();
+        setup.setURL(url);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(setup);
+        jdbcTemplate.execute("create table whoami (name varchar(20))");
+        jdbcTemplate.update("insert into whoami values (?)", name);
+        jdbcTemplate.execute("create table replica_heartbeat (id int not null primary key, beat_millis bigint not null)");
+        // Efter "shutdown" må en ny connection ikke bare oprette en tom database
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url + ";IFEXISTS=TRUE");
+        return dataSource;
+    }
+
+    private void addReplica(String name, long lagMillis) {
+        DataSource replica = database(name);
+        new JdbcTemplate(replica).update("insert into replica_heartbeat values (1, ?)", System.currentTimeMillis() - lagMillis);
+        replicas.put(name, replica);
+    }
+
+    private void start() {
+        routing = new ReplicaRoutingDataSource(primary, replicas, Duration.ofHours(1), Duration.ofSeconds(5));
+        routing.start();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    private String whoami(TransactionTemplate transaction) {
+        return transaction.execute(status -> jdbcTemplate.queryForObject("select name from whoami", String.class));
+    }
+
+    @Test
+    void whenTransactionIsReadOnly_thenItGoesToTheReplica() {
+        addReplica("replica", 0);
+        start();
+
+        assertEquals("replica", whoami(readOnly));
+        assertEquals("primary", whoami(readWrite));
+    }
+
+    @Test
+    void whenThereAreTwoReplicas_thenReadsAlternate() {
+        addReplica("replica-1", 0);
+        addReplica("replica-2", 0);
+        start();
+
+        assertEquals("replica-1", whoami(readOnly));
+        assertEquals("replica-2", whoami(readOnly));
+        assertEquals("replica-1", whoami(readOnly));
+    }
+
+    @Test
+    void whenReplicaIsTooFarBehind_thenReadsGoToPrimary() {
+        addReplica("replica", Duration.ofMinutes(1).toMillis());
+        start();
+
+        assertEquals("primary", whoami(readOnly));
+
+        // Replikeringen indhenter primary - næste tjek tager replica'en i brug igen
+        new JdbcTemplate(replicas.get("replica")).update("update replica_heartbeat set beat_millis = ?", System.currentTimeMillis());
+        routing.checkReplicas();
+        assertEquals("replica", whoami(readOnly));
+    }
+
+    @Test
+    void whenOneReplicaIsDown_thenTheOtherIsUsed() {
+        addReplica("replica-1", 0);
+        addReplica("replica-2", 0);
+        start();
+
+        shutdown(replicas.get("replica-1"));
+        routing.checkReplicas();
+
+        assertEquals("replica-2", whoami(readOnly));
+        assertEquals("replica-2", whoami(readOnly));
+    }
+
+    @Test
+    void whenReplicaGoesDownBetweenChecks_thenTheReadFallsBackToPrimary() {
+        addReplica("replica", 0);
+        start();
+
+        shutdown(replicas.get("replica"));
+
+        assertEquals("primary", whoami(readOnly));
+    }
+
+    @Test
+    void whenPrimaryIsForced_thenReadOnlyTransactionUsesPrimary() {
+        addReplica("replica", 0);
+        start();
+
+        assertEquals("primary", ReplicaRoutingDataSource.onPrimary(() -> whoami(readOnly)));
+        assertEquals("replica", whoami(readOnly));
+    }
+
+    @Test
+    void whenReplicasAreChecked_thenHeartbeatIsWrittenOnPrimary() {
+        addReplica("replica", 0);
+        start();
+
+        Long beat = new JdbcTemplate(primary).queryForObject("select beat_millis from replica_heartbeat where id = 1", Long.class);
+        assertTrue(System.currentTimeMillis() - beat < Duration.ofMinutes(1).toMillis());
+    }
+}
@@ -0,0 +1,116 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Appen med to H2 databaser: testdb som primary og replica-it som replica. Der er ingen replikering -
+// replica'en får primary's skema, og testen lægger selv et item i den som kun findes der.
+@SpringBootTest(properties = {
+        "wishlist.replicas.urls=jdbc:h2:mem:replica-it;DB_CLOSE_DELAY=-1",
+        "wishlist.replicas.check-interval=1h"})
+public class ReplicaRoutingIT {
+
+    private static final String SCHEMA_FILE = "target/replica-it-schema.sql";
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    private JdbcTemplate replica;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource replicaDataSource = new JdbcDataSource();
+        replicaDataSource.setURL("jdbc:h2:mem:replica-it;DB_CLOSE_DELAY=-1");
+        replicaDataSource.setUser("sa");
+        replica = new JdbcTemplate(replicaDataSource);
+        jdbcTemplate.execute("script nodata to '" + SCHEMA_FILE + "'");
+        replica.execute("drop all objects");
+        replica.execute("runscript from '" + SCHEMA_FILE + "'");
+
+        user = new User();
+        user.setUserName("replicaUser");
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        userRepository.save(user);
+        replica.update("insert into users (user_id, user_name, user_password) values (?, ?, ?)",
+                user.getUserId(), user.getUserName(), user.getUserPassword());
+        replica.update("insert into items (name, user_id, item_rank, version) values ('Only on replica', ?, 0, 0)", user.getUserId());
+
+        replica.update("insert into replica_heartbeat values (1, ?)", System.currentTimeMillis());
+        replicaRoutingDataSource.checkReplicas();
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testReadOnlyServiceMethodReadsFromReplica() {
+        List<Item> items = itemService.findAll();
+
+        assertEquals(1, items.size());
+        assertEquals("Only on replica", items.get(0).getName());
+    }
+
+    @Test
+    void testWritesGoToPrimary() {
+        Item item = new Item();
+        item.setName("Written");
+        item.setUser(user);
+        itemService.create(item);
+
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from items where name = 'Written'", Integer.class));
+        assertEquals(0, replica.queryForObject("select count(*) from items where name = 'Written'", Integer.class));
+    }
+
+    @Test
+    void testCachedWishlistIsLoadedFromPrimary() {
+        Item item = new Item();
+        item.setName("Just created");
+        item.setUser(user);
+        itemService.create(item);
+
+        List<ItemView> page = itemService.findPageByUserUserId(user.getUserId(), null, null, 20).getItems();
+
+        assertEquals(List.of("Just created"), page.stream().map(ItemView::getName).toList());
+    }
+
+    @Test
+    void testLaggingReplicaIsNotUsed() {
+        replica.update("update replica_heartbeat set beat_millis = ?", System.currentTimeMillis() - 60_000);
+        replicaRoutingDataSource.checkReplicas();
+
+        assertTrue(itemService.findAll().isEmpty());
+    }
+}
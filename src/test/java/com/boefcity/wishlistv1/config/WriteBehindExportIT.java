@@ -0,0 +1,95 @@
+package com.boefcity.wishlistv1.config;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.services.ItemWriteBehindQueue;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Eksporten flusher write-behind køen. Med en replica må det ikke ske i eksportens read-only transaktion,
+// for så rammer UPDATE'et replica'en (som ikke har item'et) og ændringen er tabt.
+@SpringBootTest(properties = {
+        "wishlist.write-behind.enabled=true", "wishlist.write-behind.flush-interval=1h",
+        "wishlist.replicas.urls=jdbc:h2:mem:write-behind-replica;DB_CLOSE_DELAY=-1",
+        "wishlist.replicas.check-interval=1h"})
+public class WriteBehindExportIT {
+
+    private static final String SCHEMA_FILE = "target/write-behind-replica-schema.sql";
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private ItemWriteBehindQueue writeBehindQueue;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    private Item item;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource replicaDataSource = new JdbcDataSource();
+        replicaDataSource.setURL("jdbc:h2:mem:write-behind-replica;DB_CLOSE_DELAY=-1");
+        replicaDataSource.setUser("sa");
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        jdbcTemplate.execute("script nodata to '" + SCHEMA_FILE + "'");
+        replica.execute("drop all objects");
+        replica.execute("runscript from '" + SCHEMA_FILE + "'");
+        replica.update("insert into replica_heartbeat values (1, ?)", System.currentTimeMillis());
+        replicaRoutingDataSource.checkReplicas();
+
+        User user = new User();
+        user.setUserName("exportUser");
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        item = new Item();
+        item.setName("before");
+        item.setUser(user);
+        user.getItems().add(item);
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenItemsAreExported_thenPendingEditsAreWrittenToPrimary() {
+        Item edit = new Item();
+        edit.setName("after");
+        edit.setVersion(item.getVersion());
+        itemService.update(item.getUser().getUserId(), item.getId(), edit);
+        assertEquals(1, writeBehindQueue.size());
+
+        itemService.exportItems(item.getUser().getUserId(), ItemFileFormat.CSV, new ByteArrayOutputStream());
+
+        assertEquals(0, writeBehindQueue.size());
+        assertEquals("after", jdbcTemplate.queryForObject("select name from items where id = ?", String.class, item.getId()));
+    }
+}
@@ -2,11 +2,25 @@ package com.boefcity.wishlistv1.controllers;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
-
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.boefcity.wishlistv1.dto.ItemView;
 import com.boefcity.wishlistv1.entity.Item;
 import com.boefcity.wishlistv1.entity.User;
 import com.boefcity.wishlistv1.repository.ItemRepository;
 import com.boefcity.wishlistv1.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,9 +29,11 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.List;
 
 @SpringBootTest // Indikerer, at denne klasse skal behandles som en Spring Boot-test
 @AutoConfigureMockMvc // Aktiverer automatisk konfiguration af MockMvc
@@ -27,6 +43,12 @@ public class ItemControllerIT {
     @Autowired
     private MockMvc mockMvc; // Mock-objekt til at udføre HTTP-anmodninger
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private MockHttpSession session; // Session-objekt til at simulere en brugers session
 
     private Item item; // For at bruge 'item' i 'int itemId = item.getId();' testDeleteItemWithSession
@@ -187,4 +209,186 @@ public class ItemControllerIT {
                 .andExpect(redirectedUrl("/login"));
     }
 
+    @Test
+    public void testImportItemsFromText() throws Exception {
+        mockMvc.perform(post("/import")
+                        .param("format", "csv")
+                        .param("text", "name,description,link\nBike,Red,https://bike.example\n,missing name,\nBook,,")
+                        .session(session))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/import"))
+                .andExpect(flash().attribute("message", "2 items imported."))
+                .andExpect(flash().attributeExists("importErrors"));
+    }
+
+    @Test
+    public void testExportItemsAsCsv() throws Exception {
+        MvcResult result = mockMvc.perform(get("/items/export")
+                        .param("format", "csv")
+                        .session(session))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Eksporten kører på en anden tråd og kan ikke se testens ikke-committede data, så vi tjekker kun headeren
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"wishlist.csv\""))
+                .andExpect(content().string(startsWith("name,description,link\r\n")));
+    }
+
+    @Test
+    public void testServiceMethodsAreTimed() throws Exception {
+        mockMvc.perform(get("/items").session(session))
+                .andExpect(status().isOk());
+
+        // Se MetricsConfig - @Timed på ItemServiceImpl giver en timer pr. metode
+        assertNotNull(meterRegistry.find("wishlist.service").tag("method", "findPageByUserUserId").timer());
+    }
+
+    @Test
+    public void testSearchItemsWithSession() throws Exception {
+        mockMvc.perform(get("/items/search").param("q", "item").session(session))
+                .andExpect(status().isOk())
+                .andExpect(model().attributeExists("wishlist"))
+                .andExpect(model().attribute("query", "item"))
+                .andExpect(view().name("items"));
+    }
+
+
+    @Test
+    public void testDisplayItemsUnchangedReturnsNotModified() throws Exception {
+        MvcResult first = mockMvc.perform(get("/items").session(session))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "private, no-cache"))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        // Uændret wishlist - 304 uden model og uden indhold
+        mockMvc.perform(get("/items").session(session).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // Andre brugere har andre versioner
+        mockMvc.perform(get("/items").sessionAttr("userId", 999).header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+
+    @Test
+    public void testDisplayItemsDoesNotLoadEntities() throws Exception {
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        entityManager.clear(); // Ellers ligger brugeren og item'et allerede i persistence context fra setUp
+
+        mockMvc.perform(get("/items").session(session))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("wishlist", hasSize(1)));
+        mockMvc.perform(get("/editItem/" + item.getId()).session(session))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("item", instanceOf(ItemView.class)));
+
+        // Kun projections - hverken items eller users er loadet som entities
+        assertEquals(0, statistics.getEntityLoadCount());
+        statistics.setStatisticsEnabled(false);
+    }
+
+
+    @Test
+    public void testDeleteSelectedItemsOnlyDeletesOwnItems() throws Exception {
+        User other = new User();
+        other.setUserName("otherUser");
+        other.setUserPassword("otherPass");
+        other.setItems(new ArrayList<>());
+        Item othersItem = new Item();
+        othersItem.setName("othersItem");
+        othersItem.setUser(other);
+        other.getItems().add(othersItem);
+        userRepository.save(other);
+
+        mockMvc.perform(post("/items/delete")
+                        .param("ids", String.valueOf(item.getId()), String.valueOf(othersItem.getId()))
+                        .session(session))
+                .andExpect(redirectedUrl("/items"))
+                .andExpect(flash().attribute("message",
+                        "1 of 2 items deleted. The rest were not found or are not yours."));
+
+        assertFalse(itemRepository.existsById(item.getId()));
+        assertTrue(itemRepository.existsById(othersItem.getId()));
+    }
+
+
+    @Test
+    public void testUpdateItemWithOldVersionShowsConflict() throws Exception {
+        Item firstTab = new Item();
+        firstTab.setName("first tab");
+        firstTab.setVersion(item.getVersion());
+        mockMvc.perform(post("/updateItem/" + item.getId()).session(session).flashAttr("item", firstTab))
+                .andExpect(redirectedUrl("/items"));
+
+        // Anden fane har stadig den gamle version
+        Item secondTab = new Item();
+        secondTab.setName("second tab");
+        secondTab.setVersion(item.getVersion());
+        mockMvc.perform(post("/updateItem/" + item.getId()).session(session).flashAttr("item", secondTab))
+                .andExpect(status().isConflict())
+                .andExpect(view().name("editForm"))
+                .andExpect(model().attribute("current", hasProperty("name", is("first tab"))));
+
+        assertEquals("first tab", itemRepository.findById(item.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void testUpdateOtherUsersItemIsRejected() throws Exception {
+        Item update = new Item();
+        update.setName("not mine");
+        mockMvc.perform(post("/updateItem/" + item.getId()).sessionAttr("userId", 999).flashAttr("item", update))
+                .andExpect(redirectedUrl("/items"))
+                .andExpect(flash().attribute("message", "Item not found."));
+    }
+
+    @Test
+    public void testMoveItemChangesOrderWithoutChangingVersion() throws Exception {
+        User user = userRepository.findById(item.getUser().getUserId()).orElseThrow();
+        Item second = new Item();
+        second.setName("second");
+        second.setRank(10);
+        second.setUser(user);
+        itemRepository.save(second);
+        Item third = new Item();
+        third.setName("third");
+        third.setRank(20);
+        third.setUser(user);
+        itemRepository.save(third);
+
+        mockMvc.perform(post("/items/" + third.getId() + "/move")
+                        .param("before", String.valueOf(item.getId()))
+                        .session(session))
+                .andExpect(redirectedUrl("/items"));
+
+        MvcResult result = mockMvc.perform(get("/items").session(session))
+                .andExpect(status().isOk())
+                .andReturn();
+        @SuppressWarnings("unchecked")
+        List<ItemView> wishlist = (List<ItemView>) result.getModelAndView().getModel().get("wishlist");
+        assertEquals(List.of("third", "itemName", "second"), wishlist.stream().map(ItemView::getName).toList());
+        assertEquals(0, itemRepository.findById(third.getId()).orElseThrow().getVersion());
+    }
+
+    @Test
+    public void testMoveOtherUsersItemIsRejected() throws Exception {
+        mockMvc.perform(post("/items/" + item.getId() + "/move").sessionAttr("userId", 999))
+                .andExpect(redirectedUrl("/items"))
+                .andExpect(flash().attribute("message", "Item not found."));
+    }
+
+    @Test
+    public void testMoveKeepsTheUserOnTheSamePage() throws Exception {
+        mockMvc.perform(post("/items/" + item.getId() + "/move")
+                        .param("pageAfter", "42").param("size", "5")
+                        .session(session))
+                .andExpect(redirectedUrl("/items?after=42&size=5"));
+    }
+
 }
@@ -3,11 +3,18 @@ package com.boefcity.wishlistv1.controllers;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.boefcity.wishlistv1.AuthService;
 import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.LinkPreviewService;
+import com.boefcity.wishlistv1.UserNameTakenException;
 import com.boefcity.wishlistv1.UserService;
 import com.boefcity.wishlistv1.entity.Item;
 import com.boefcity.wishlistv1.entity.User;
-import jakarta.servlet.http.HttpSession;
+import com.boefcity.wishlistv1.services.WishlistEventHub;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +24,8 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ui.Model;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import java.util.List;
 // Aktiverer Mockito-frameworket til at gøre brug af mocks og stubs muligt i testklassen
 @ExtendWith(MockitoExtension.class)
 public class ItemControllerUnitTest {
@@ -26,11 +35,20 @@ public class ItemControllerUnitTest {
     @Mock
     private UserService userService;
     @Mock
+    private LinkPreviewService linkPreviewService;
+    @Mock
     private Model model;
     @Mock
     private RedirectAttributes redirectAttributes;
     @Mock
-    private HttpSession session;
+    private AuthService authService;
+    @Mock
+    private HttpServletRequest request;
+    @Mock
+    private HttpServletResponse response;
+
+    @Mock
+    private WishlistEventHub eventHub;
 
     @InjectMocks //Injekter nødvendige klasser - se ItemController Constructor
     private ItemController controller;
@@ -60,7 +78,7 @@ public class ItemControllerUnitTest {
     public void testCreateUserAlreadyExists() {
         User user = new User();
         user.setUserName("existingUser");
-        when(userService.findByUserName("existingUser")).thenReturn(user);
+        when(userService.saveUser(user)).thenThrow(new UserNameTakenException("existingUser"));
 
         String result = controller.createUser(user, redirectAttributes);
         assertEquals("redirect:/register", result);
@@ -71,41 +89,77 @@ public class ItemControllerUnitTest {
     public void testCreateUserSuccess() {
         User newUser = new User();
         newUser.setUserName("newUser");
-        when(userService.findByUserName("newUser")).thenReturn(null);
         when(userService.saveUser(any(User.class))).thenReturn(newUser);
 
         String result = controller.createUser(newUser, redirectAttributes);
         assertEquals("redirect:/login", result);
         verify(redirectAttributes).addFlashAttribute("message", "User registered successfully!");
     }
+    @Test
+    public void testLoginUserSuccess() {
+        User user = new User(1, "CurrentUser");
+        when(userService.checkLogin("CurrentUser", "pass")).thenReturn(true);
+        when(userService.findByUserName("CurrentUser")).thenReturn(user);
+
+        String result = controller.loginUser("CurrentUser", "pass", request, response, redirectAttributes);
+        assertEquals("redirect:/items", result);
+        verify(authService).login(1, request, response);
+    }
+
     @Test
     public void testDeleteItemNoUserSession() {
-        when(session.getAttribute("userId")).thenReturn(null);
+        when(authService.currentUserId(request)).thenReturn(null);
 
-        String result = controller.deleteItem(1, session, redirectAttributes);
+        String result = controller.deleteItem(1, request, redirectAttributes);
         assertEquals("redirect:/login", result);
         verify(redirectAttributes).addFlashAttribute("message", "Please login to delete items.");
     }
 
     @Test
     public void testDeleteItemAuthorized() {
-        User user = new User(1, "CurrentUser");
-        Item item = new Item();
-        item.setUser(user);
-        when(session.getAttribute("userId")).thenReturn(1);
-        when(itemService.findById(1)).thenReturn(java.util.Optional.of(item));
-        doNothing().when(itemService).deleteById(1);  //Bruges for at undgå at opjektet faktisk slettes i databasen
+        when(authService.currentUserId(request)).thenReturn(1);
+        when(itemService.deleteByIdsForUser(1, List.of(1))).thenReturn(1);  //Ét item slettet - det var brugerens
 
-        String result = controller.deleteItem(1, session, redirectAttributes);
+        String result = controller.deleteItem(1, request, redirectAttributes);
         assertEquals("redirect:/items", result);
         verify(redirectAttributes).addFlashAttribute("message", "Item deleted successfully!");
     }
 
+    @Test
+    public void testDeleteItemNotOwner() {
+        when(authService.currentUserId(request)).thenReturn(2);
+        when(itemService.deleteByIdsForUser(2, List.of(1))).thenReturn(0);
+
+        String result = controller.deleteItem(1, request, redirectAttributes);
+        assertEquals("redirect:/items", result);
+        verify(redirectAttributes).addFlashAttribute("message", "Unauthorized to delete this item");
+    }
+
+    @Test
+    public void testDeleteSelectedItemsPartly() {
+        when(authService.currentUserId(request)).thenReturn(1);
+        when(itemService.deleteByIdsForUser(eq(1), anyCollection())).thenReturn(2);
+
+        String result = controller.deleteItems(List.of(1, 2, 3, 3), request, redirectAttributes);
+        assertEquals("redirect:/items", result);
+        verify(redirectAttributes).addFlashAttribute("message",
+                "2 of 3 items deleted. The rest were not found or are not yours.");
+    }
+
+    @Test
+    public void testDeleteSelectedItemsNothingSelected() {
+        when(authService.currentUserId(request)).thenReturn(1);
+
+        String result = controller.deleteItems(null, request, redirectAttributes);
+        assertEquals("redirect:/items", result);
+        verify(itemService, never()).deleteByIdsForUser(anyInt(), anyCollection());
+    }
+
     @Test
     public void testUpdateItemNotLoggedIn() {
-        when(session.getAttribute("userId")).thenReturn(null);
+        when(authService.currentUserId(request)).thenReturn(null);
 
-        String result = controller.updateItem(1, new Item(), session, redirectAttributes);
+        String result = controller.updateItem(1, new Item(), request, response, model, redirectAttributes);
         assertEquals("redirect:/login", result);
     }
 
@@ -113,13 +167,28 @@ public class ItemControllerUnitTest {
     public void testUpdateItemSuccess() {
         Integer userId = 1;
         Item item = new Item();
-        when(session.getAttribute("userId")).thenReturn(userId);
-        when(itemService.update(eq(1), any(Item.class))).thenReturn(item);
+        when(authService.currentUserId(request)).thenReturn(userId);
 
-        String result = controller.updateItem(1, item, session, redirectAttributes);
+        String result = controller.updateItem(1, item, request, response, model, redirectAttributes);
         assertEquals("redirect:/items", result);
+        verify(itemService).update(1, 1, item);
         verify(redirectAttributes).addFlashAttribute("message", "Item updated successfully!");
     }
 
+    @Test
+    public void testUpdateItemConflict() {
+        Item item = new Item();
+        item.setVersion(1);
+        ItemView current = new ItemView(1, 1, "Saved", null, null, 2);
+        when(authService.currentUserId(request)).thenReturn(1);
+        doThrow(new ItemUpdateConflictException(current)).when(itemService).update(1, 1, item);
+
+        String result = controller.updateItem(1, item, request, response, model, redirectAttributes);
+        assertEquals("editForm", result);
+        assertEquals(2, item.getVersion()); // Et nyt submit overskriver den gemte udgave
+        verify(model).addAttribute("current", current);
+        verify(response).setStatus(409);
+    }
+
 
 }
@@ -0,0 +1,124 @@
+package com.boefcity.wishlistv1.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+
+// Små limits, så de kan rammes. Hver test bruger sine egne IP'er, da limiterne lever så længe konteksten gør.
+@SpringBootTest(properties = {
+        "wishlist.rate-limit.auth-per-ip.permits=1", "wishlist.rate-limit.auth-per-ip.period=1h",
+        "wishlist.rate-limit.auth-per-ip.burst=2",
+        "wishlist.rate-limit.create-per-user.permits=1", "wishlist.rate-limit.create-per-user.period=1h",
+        "wishlist.rate-limit.create-per-user.burst=1"})
+@AutoConfigureMockMvc
+public class RateLimitIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    private static MockHttpServletRequestBuilder from(String ip, MockHttpServletRequestBuilder request) {
+        return request.with(r -> {
+            r.setRemoteAddr(ip);
+            return r;
+        });
+    }
+
+    @Test
+    public void testLoginIsLimitedPerIp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(from("10.1.0.1", post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                    .andExpect(redirectedUrl("/login"));
+        }
+        mockMvc.perform(from("10.1.0.1", post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3600"));
+        // Register deler bucket med login
+        mockMvc.perform(from("10.1.0.1", post("/register").param("userName", "someone").param("userPassword", "pass")))
+                .andExpect(status().isTooManyRequests());
+
+        // Andre klienter og formularerne er ikke ramt
+        mockMvc.perform(from("10.1.0.2", post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                .andExpect(redirectedUrl("/login"));
+        mockMvc.perform(from("10.1.0.1", get("/register")))
+                .andExpect(status().isOk());
+
+        double rejected = meterRegistry.get("wishlist.ratelimit.rejected").tag("limiter", "auth-per-ip")
+                .functionCounter().count();
+        assertEquals(2, rejected, 0.0);
+    }
+
+    // En IPv6 klient råder typisk over et helt /64 og kan skifte adresse ved hver request
+    @Test
+    public void testIpv6ClientsAreLimitedPer64() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(from("2001:db8:1:2::" + i, post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                    .andExpect(redirectedUrl("/login"));
+        }
+        mockMvc.perform(from("2001:db8:1:2:ffff::3", post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                .andExpect(status().isTooManyRequests());
+
+        // Et andet /64 er en anden klient
+        mockMvc.perform(from("2001:db8:1:3::1", post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                .andExpect(redirectedUrl("/login"));
+    }
+
+    // Adresser i hver sit /64 hvis tekst har samme String.hashCode ("Aa" og "BB") må ikke dele bucket
+    @Test
+    public void testAddressesWithTheSameStringHashAreLimitedSeparately() throws Exception {
+        String attacker = "2001:db8:Aa::1";
+        String victim = "2001:db8:BB::1";
+        assertEquals(attacker.hashCode(), victim.hashCode());
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(from(attacker, post("/loginUser").param("userName", "nobody").param("password", "wrong")));
+        }
+
+        mockMvc.perform(from(victim, post("/loginUser").param("userName", "nobody").param("password", "wrong")))
+                .andExpect(redirectedUrl("/login"));
+    }
+
+    @Test
+    public void testCreateIsLimitedPerUser() throws Exception {
+        User user = new User();
+        user.setUserName("limitedUser");
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        userRepository.save(user);
+
+        mockMvc.perform(from("10.2.0.1", post("/create").param("name", "first").sessionAttr("userId", user.getUserId())))
+                .andExpect(redirectedUrl("/items"));
+        // Ny IP, samme bruger
+        mockMvc.perform(from("10.2.0.2", post("/create").param("name", "second").sessionAttr("userId", user.getUserId())))
+                .andExpect(status().isTooManyRequests());
+
+        assertEquals(1, itemRepository.findByUserUserId(user.getUserId()).size());
+    }
+}
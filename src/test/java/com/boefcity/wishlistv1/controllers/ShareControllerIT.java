@@ -0,0 +1,130 @@
+package com.boefcity.wishlistv1.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+
+// Ikke @Transactional: siderne caches efter commit (ItemChangedEvent), så testen skal se det samme som en rigtig request
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ShareControllerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private MockHttpSession session;
+    private Item item;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUserName("shareUser");
+        user.setUserPassword("sharePass");
+        user.setItems(new ArrayList<>());
+        item = new Item();
+        item.setName("Shared bike");
+        item.setDescription("Red");
+        item.setUser(user);
+        user.getItems().add(item);
+        userRepository.save(user);
+
+        session = new MockHttpSession();
+        session.setAttribute("userId", user.getUserId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    private String createShareLink() throws Exception {
+        mockMvc.perform(post("/share").session(session))
+                .andExpect(redirectedUrl("/share"));
+        MvcResult form = mockMvc.perform(get("/share").session(session))
+                .andExpect(status().isOk())
+                .andExpect(view().name("shareForm"))
+                .andReturn();
+        String link = (String) form.getModelAndView().getModel().get("shareLink");
+        assertNotNull(link);
+        return link.substring(link.indexOf("/shared/"));
+    }
+
+    @Test
+    public void testSharedWishlistIsReadOnlyWithoutLogin() throws Exception {
+        String link = createShareLink();
+
+        mockMvc.perform(get(link))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Robots-Tag", "noindex"))
+                .andExpect(content().contentTypeCompatibleWith("text/html"))
+                .andExpect(content().string(containsString("shareUser&#39;s wishlist")))
+                .andExpect(content().string(containsString("Shared bike")))
+                .andExpect(content().string(not(containsString("/editItem/"))))
+                .andExpect(content().string(not(containsString("/delete/"))));
+    }
+
+    @Test
+    public void testSharedWishlistShowsUpdatesAndAnswers304WhenUnchanged() throws Exception {
+        String link = createShareLink();
+        String etag = mockMvc.perform(get(link)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get(link).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(post("/updateItem/" + item.getId())
+                        .session(session)
+                        .param("name", "Blue bike")
+                        .param("version", "0"))
+                .andExpect(redirectedUrl("/items"));
+
+        mockMvc.perform(get(link).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("Blue bike")));
+    }
+
+    @Test
+    public void testStoppedAndReplacedLinksNoLongerWork() throws Exception {
+        String first = createShareLink();
+        String second = createShareLink();
+        assertNotEquals(first, second);
+        mockMvc.perform(get(first)).andExpect(status().isNotFound());
+        mockMvc.perform(get(second)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/share/stop").session(session))
+                .andExpect(redirectedUrl("/share"));
+        mockMvc.perform(get(second)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testShareFormRequiresLogin() throws Exception {
+        mockMvc.perform(get("/share")).andExpect(redirectedUrl("/login"));
+        mockMvc.perform(post("/share")).andExpect(redirectedUrl("/login"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.boefcity.wishlistv1.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Kører med en rigtig Tomcat, da det er Tomcat der komprimerer HTML (server.compression).
+// De precomprimerede filer laves af src/build/java/StaticAssetCompressor i process-classes, så testen skal køres via Maven.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+public class StaticResourceIT {
+
+    private static final Pattern STYLESHEET = Pattern.compile("/homePage-[0-9a-f]{32}\\.css");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @LocalServerPort
+    private int port;
+
+    private String fingerprintedStylesheet() throws Exception {
+        String html = mockMvc.perform(get("/")).andReturn().getResponse().getContentAsString();
+        Matcher matcher = STYLESHEET.matcher(html);
+        assertTrue(matcher.find(), "Stylesheet link is not fingerprinted: " + html);
+        return matcher.group();
+    }
+
+    @Test
+    public void testTemplatesLinkToFingerprintedAssets() throws Exception {
+        mockMvc.perform(get("/"))
+                .andExpect(content().string(containsString("/images/wishlist-")))
+                .andExpect(content().string(org.hamcrest.Matchers.not(containsString("href=\"/homePage.css\""))));
+    }
+
+    @Test
+    public void testFingerprintedAssetIsImmutable() throws Exception {
+        mockMvc.perform(get(fingerprintedStylesheet()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("max-age=31536000")))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+    }
+
+    @Test
+    public void testAssetWithoutFingerprintIsRevalidated() throws Exception {
+        mockMvc.perform(get("/homePage.css"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("no-cache")));
+    }
+
+    @Test
+    public void testWrongFingerprintIsNotFound() throws Exception {
+        mockMvc.perform(get("/homePage-0123456789abcdef0123456789abcdef.css"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testPrecompressedVariantIsServed() throws Exception {
+        String stylesheet = fingerprintedStylesheet();
+
+        mockMvc.perform(get(stylesheet).header(HttpHeaders.ACCEPT_ENCODING, "gzip, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "br"))
+                .andExpect(header().string(HttpHeaders.VARY, containsString("Accept-Encoding")));
+        mockMvc.perform(get(stylesheet).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+
+    @Test
+    public void testHtmlIsCompressed() throws Exception {
+        HttpResponse<byte[]> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+    }
+}
@@ -0,0 +1,90 @@
+package com.boefcity.wishlistv1.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.boefcity.wishlistv1.config.CookieFlashMapManager;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import com.boefcity.wishlistv1.services.TokenAuthService;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+
+// Samme flow som ItemControllerIT, men med auth.mode=token: login giver en cookie og der oprettes aldrig en session
+@SpringBootTest(properties = {"auth.mode=token", "auth.token.secret=integration-test-secret-at-least-32-bytes"})
+@AutoConfigureMockMvc
+public class TokenAuthIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUserName("tokenUser");
+        user.setUserPassword("tokenPass");
+        user.setItems(new ArrayList<>());
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testLoginSetsCookieAndNoSession() throws Exception {
+        MvcResult login = mockMvc.perform(post("/loginUser")
+                        .param("userName", "tokenUser")
+                        .param("password", "tokenPass"))
+                .andExpect(redirectedUrl("/items"))
+                .andReturn();
+        assertNull(login.getRequest().getSession(false));
+        Cookie cookie = login.getResponse().getCookie(TokenAuthService.COOKIE_NAME);
+        assertNotNull(cookie);
+
+        MvcResult items = mockMvc.perform(get("/items").cookie(cookie))
+                .andExpect(status().isOk())
+                .andExpect(view().name("items"))
+                .andReturn();
+        assertNull(items.getRequest().getSession(false));
+    }
+
+    @Test
+    public void testTamperedCookieRedirectsToLogin() throws Exception {
+        mockMvc.perform(get("/items").cookie(new Cookie(TokenAuthService.COOKIE_NAME, "1.9999999999.forged")))
+                .andExpect(redirectedUrl("/login"));
+    }
+
+    @Test
+    public void testFlashMessageSurvivesRedirectWithoutSession() throws Exception {
+        MvcResult failed = mockMvc.perform(post("/loginUser")
+                        .param("userName", "tokenUser")
+                        .param("password", "wrong"))
+                .andExpect(redirectedUrl("/login"))
+                .andReturn();
+        assertNull(failed.getRequest().getSession(false));
+        Cookie flash = failed.getResponse().getCookie(CookieFlashMapManager.COOKIE_NAME);
+        assertNotNull(flash);
+
+        MvcResult page = mockMvc.perform(get("/login").cookie(flash))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("message", "Incorrect username or password. Try again"))
+                .andReturn();
+        // Beskeden er brugt - cookien slettes
+        assertEquals(0, page.getResponse().getCookie(CookieFlashMapManager.COOKIE_NAME).getMaxAge());
+    }
+}
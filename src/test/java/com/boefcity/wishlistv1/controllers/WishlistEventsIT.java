@@ -0,0 +1,111 @@
+package com.boefcity.wishlistv1.controllers;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import com.boefcity.wishlistv1.services.WishlistEventHub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+
+// Uden @Transactional: events sendes først når ændringen er committed
+@SpringBootTest(properties = "wishlist.events.max-per-user=1")
+@AutoConfigureMockMvc
+public class WishlistEventsIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WishlistEventHub eventHub;
+
+    private final MockHttpSession session = new MockHttpSession();
+
+    private Item item;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setUserName("eventUser");
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        item = new Item();
+        item.setName("before");
+        item.setRank(1);
+        item.setUser(user);
+        user.getItems().add(item);
+        userRepository.save(user);
+        session.setAttribute("userId", user.getUserId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void testEventsRequireLogin() throws Exception {
+        mockMvc.perform(get("/items/events").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testUpdateIsPushedToOpenConnection() throws Exception {
+        MvcResult events = mockMvc.perform(get("/items/events").session(session).accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Max én forbindelse pr. bruger i testen
+        mockMvc.perform(get("/items/events").session(session).accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isTooManyRequests());
+
+        Item edit = new Item();
+        edit.setName("after");
+        edit.setDescription("new description");
+        edit.setVersion(item.getVersion());
+        mockMvc.perform(post("/updateItem/" + item.getId()).session(session).flashAttr("item", edit))
+                .andExpect(redirectedUrl("/items"));
+
+        MockHttpServletResponse response = events.getResponse();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!response.getContentAsString().contains("\"after\"") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String body = response.getContentAsString();
+        assertTrue(body.contains("event:updated"), body);
+        assertTrue(body.contains("\"itemId\":" + item.getId()), body);
+        assertTrue(body.contains("\"description\":\"new description\""), body);
+        // Headers skrives først med det første event
+        assertEquals("no-store", response.getHeader("Cache-Control"));
+
+        // Lukker forbindelsen, så den næste test starter uden
+        events.getRequest().getAsyncContext().complete();
+        deadline = System.currentTimeMillis() + 5000;
+        while (eventHub.connections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.ItemExportRow;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemExporterTest {
+
+    private final ItemExporter exporter = new ItemExporter(new ObjectMapper());
+
+    private String export(ItemFileFormat format, ItemExportRow... rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.write(Stream.of(rows), format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void whenExportingCsv_thenFieldsWithCommasAndQuotesAreQuoted() {
+        String csv = export(ItemFileFormat.CSV, new ItemExportRow(1, "Bike, red", "The \"best\"", null));
+
+        assertEquals("name,description,link\r\n\"Bike, red\",\"The \"\"best\"\"\",\r\n", csv);
+    }
+
+    @Test
+    void whenExportingJson_thenEachItemIsOneLine() {
+        String json = export(ItemFileFormat.JSON,
+                new ItemExportRow(1, "Bike", null, "https://bike.example"),
+                new ItemExportRow(2, "Book", "Paperback", null));
+
+        String[] lines = json.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"id\":1,\"name\":\"Bike\",\"description\":null,\"link\":\"https://bike.example\"}", lines[0]);
+    }
+}
@@ -0,0 +1,79 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.ImportResult;
+import com.boefcity.wishlistv1.dto.ItemFileFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ItemImporterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ItemImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        importer = new ItemImporter(jdbcTemplate, new ObjectMapper(), 2, 10);
+    }
+
+    private ImportResult importText(String text, ItemFileFormat format) {
+        return importer.importItems(7, new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    @Test
+    void whenCsvHasFiveRows_thenTheyAreInsertedInBatchesOfTwo() {
+        ImportResult result = importText("a\nb\nc\nd\ne\n", ItemFileFormat.CSV);
+
+        assertEquals(5, result.getImported());
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void whenRowIsInvalid_thenItIsReportedAndTheRestIsImported() {
+        ImportResult result = importText("name,description,link\n,no name,\nBike,Red,https://bike.example\n", ItemFileFormat.CSV);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getErrors().size());
+        assertEquals(1, result.getErrors().get(0).getRow());
+    }
+
+    @Test
+    void whenJsonArrayIsImported_thenEveryObjectIsARow() {
+        ImportResult result = importText("[{\"name\":\"Bike\"},{\"name\":\"Book\",\"link\":\"x\"},{\"description\":\"d\"}]",
+                ItemFileFormat.JSON);
+
+        assertEquals(2, result.getImported());
+        assertEquals(3, result.getErrors().get(0).getRow());
+    }
+
+    @Test
+    void whenRowLimitIsReached_thenImportStops() {
+        ImportResult result = importText("a\nb\nc\nd\ne\nf\ng\nh\ni\nj\nk\nl\n", ItemFileFormat.CSV);
+
+        assertEquals(10, result.getImported());
+        assertTrue(result.hasErrors());
+    }
+
+    @Test
+    void whenCsvFieldIsQuoted_thenCommasAndQuotesAreKept() throws Exception {
+        List<String> record = ItemImporter.readCsvRecord(new StringReader("\"Bike, red\",\"The \"\"best\"\" one\",link\n"));
+
+        assertEquals(List.of("Bike, red", "The \"best\" one", "link"), record);
+    }
+}
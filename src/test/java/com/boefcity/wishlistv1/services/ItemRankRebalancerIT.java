@@ -0,0 +1,118 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Uden @Transactional: låsen, JDBC batchen og flytningen skal køre i deres egne transaktioner som i appen
+@SpringBootTest
+public class ItemRankRebalancerIT {
+
+    @Autowired
+    private ItemRankRebalancer rankRebalancer;
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUserName("rankUser");
+        user.setUserPassword("pass");
+        user.setItems(new ArrayList<>());
+        for (long rank = 5; rank <= 7; rank++) {
+            Item item = new Item();
+            item.setName("item " + rank);
+            item.setRank(rank);
+            item.setUser(user);
+            user.getItems().add(item);
+        }
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testRebalanceKeepsOrderAndLastRank() {
+        List<Integer> ids = itemRepository.findIdsByUserIdInRankOrder(user.getUserId());
+
+        assertEquals(3, rankRebalancer.rebalance(user.getUserId()));
+
+        assertEquals(ids, itemRepository.findIdsByUserIdInRankOrder(user.getUserId()));
+        assertEquals(List.of(7 - 2 * ItemRankRebalancer.GAP, 7 - ItemRankRebalancer.GAP, 7L), ranks(ids));
+    }
+
+    @Test
+    void testConcurrentCreatesGetDistinctRanks() throws Exception {
+        int creates = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(creates)) {
+            for (int i = 0; i < creates; i++) {
+                Item item = new Item();
+                item.setName("concurrent " + i);
+                item.setUser(user);
+                results.add(executor.submit(() -> {
+                    start.await();
+                    itemService.create(item);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        }
+
+        List<Long> ranks = ranks(itemRepository.findIdsByUserIdInRankOrder(user.getUserId()));
+        assertEquals(3 + creates, ranks.size());
+        assertEquals(ranks.size(), Set.copyOf(ranks).size());
+    }
+
+    @Test
+    void testMoveIntoUsedUpGapRebalancesFirst() {
+        List<Integer> ids = itemRepository.findIdsByUserIdInRankOrder(user.getUserId());
+
+        // Der er ingen rank mellem 5 og 6
+        itemService.move(user.getUserId(), ids.get(2), ids.get(0), null);
+
+        assertEquals(List.of(ids.get(0), ids.get(2), ids.get(1)),
+                itemRepository.findIdsByUserIdInRankOrder(user.getUserId()));
+        List<Long> ranks = ranks(List.of(ids.get(0), ids.get(1)));
+        assertEquals(ItemRankRebalancer.GAP, ranks.get(1) - ranks.get(0));
+    }
+
+    private List<Long> ranks(List<Integer> ids) {
+        return ids.stream().map(id -> itemRepository.findById(id).orElseThrow().getRank()).toList();
+    }
+}
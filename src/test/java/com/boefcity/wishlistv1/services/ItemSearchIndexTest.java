@@ -0,0 +1,68 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.ItemSearchDocument;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ItemSearchIndexTest {
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    private ItemSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ItemSearchIndex(itemRepository);
+        index.put(new ItemSearchDocument(1, 1, "Red bike", "A bike for the city", "https://www.bikeshop.dk/red"));
+        index.put(new ItemSearchDocument(2, 1, "Cookbook", "Recipes with red lentils", "https://amazon.de/cookbook"));
+        index.put(new ItemSearchDocument(3, 2, "Red scarf", null, null));
+    }
+
+    private List<Integer> ids(List<ItemSearchDocument> hits) {
+        return hits.stream().map(ItemSearchDocument::getId).toList();
+    }
+
+    @Test
+    void whenSearchingForAWord_thenNameMatchesRankFirst() {
+        assertEquals(List.of(1, 2), ids(index.search(1, "red", 10)));
+    }
+
+    @Test
+    void whenSearchingWithAPrefix_thenItMatches() {
+        assertEquals(List.of(2), ids(index.search(1, "cook", 10)));
+    }
+
+    @Test
+    void whenSearchingForTheLinkHost_thenItMatches() {
+        assertEquals(List.of(2), ids(index.search(1, "amazon", 10)));
+    }
+
+    @Test
+    void whenSearchingForSeveralWords_thenAllMustMatch() {
+        assertEquals(List.of(2), ids(index.search(1, "red lent", 10)));
+    }
+
+    @Test
+    void whenSearching_thenOnlyTheUsersOwnItemsAreFound() {
+        assertEquals(List.of(3), ids(index.search(2, "red", 10)));
+    }
+
+    @Test
+    void whenItemIsUpdatedOrDeleted_thenIndexFollows() {
+        index.itemChanged(new ItemChangedEvent(ItemChangedEvent.Type.UPDATED, 1, 1, "Blue bike", null, null));
+        assertEquals(List.of(2), ids(index.search(1, "red", 10)));
+
+        index.itemChanged(new ItemChangedEvent(ItemChangedEvent.Type.DELETED, 1, 2, null, null, null));
+        assertTrue(index.search(1, "red", 10).isEmpty());
+    }
+}
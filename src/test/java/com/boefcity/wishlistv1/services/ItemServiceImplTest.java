@@ -1,17 +1,30 @@
 package com.boefcity.wishlistv1.services;
 
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
 import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.entity.User;
 import com.boefcity.wishlistv1.repository.ItemRepository;
+import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;// Use Mockito testing tools with JUnit 5 tests
 @ExtendWith(MockitoExtension.class)
@@ -20,6 +33,30 @@ public class ItemServiceImplTest {
     @Mock
     private ItemRepository itemRepository;
 
+    @Mock
+    private ItemImporter itemImporter;
+
+    @Mock
+    private ItemExporter itemExporter;
+
+    @Mock
+    private ItemSearchIndex itemSearchIndex;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock // Slået fra medmindre testen siger andet - se ItemWriteBehindQueue
+    private ItemWriteBehindQueue writeBehindQueue;
+
+    @Mock
+    private ItemRankRebalancer rankRebalancer;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy // Rigtig cache, så vi kan teste hits og invalidering
+    private WishlistCache wishlistCache = new WishlistCache(100, 100, Duration.ofMinutes(5));
+
     @InjectMocks
     private ItemServiceImpl itemService;
 
@@ -67,18 +104,255 @@ public class ItemServiceImplTest {
 
     @Test
     void whenUpdateItem_thenItemShouldBeUpdated() {
-        when(itemRepository.findById(anyInt())).thenReturn(Optional.of(item));
-        when(itemRepository.save(any(Item.class))).thenReturn(item);
-
         Item updatedItem = new Item();
         updatedItem.setName("Updated Name");
         updatedItem.setDescription("Updated Description");
         updatedItem.setLink("http://updated.com");
+        updatedItem.setVersion(3);
+        when(itemRepository.updateIfCurrent(1, 1, 3, "Updated Name", "Updated Description", "http://updated.com"))
+                .thenReturn(1);
+
+        itemService.update(1, 1, updatedItem);
+
+        // Ét UPDATE - item'et læses ikke først
+        verify(itemRepository, never()).findById(anyInt());
+        verify(itemRepository, never()).findViewById(anyInt());
+    }
+
+    @Test
+    void whenUpdateItemWithOldVersion_thenConflictHasCurrentItem() {
+        item.setVersion(2);
+        when(itemRepository.updateIfCurrent(eq(1), eq(1), eq(2), any(), any(), any())).thenReturn(0);
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 1, "Saved", null, null, 3)));
+
+        ItemUpdateConflictException conflict = assertThrows(ItemUpdateConflictException.class,
+                () -> itemService.update(1, 1, item));
+        assertEquals(3, conflict.getCurrent().getVersion());
+    }
+
+    @Test
+    void whenUpdateOtherUsersItem_thenItIsNotFound() {
+        when(itemRepository.updateIfCurrent(eq(1), eq(2), anyInt(), any(), any(), any())).thenReturn(0);
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 1, "Saved", null, null, 0)));
+
+        assertThrows(EntityNotFoundException.class, () -> itemService.update(2, 1, item));
+    }
+
+    private ItemView itemWithId(int id) {
+        return new ItemView(id, 1, "item " + id, null, null, 0);
+    }
+
+    @Test
+    void whenFirstPageHasMore_thenNextCursorIsLastId() {
+        // size 2 -> repository spørges om 3 rækker
+        when(itemRepository.findViewsByUserId(1, Limit.of(3)))
+                .thenReturn(List.of(itemWithId(4), itemWithId(7), itemWithId(9)));
+
+        ItemPage page = itemService.findPageByUserUserId(1, null, null, 2);
+
+        assert page.getItems().size() == 2 : "Page should be trimmed to size";
+        assert page.getNextCursor() == 7 : "Next cursor should be the last id on the page";
+        assert !page.hasPrevious() : "First page has no previous page";
+    }
+
+    @Test
+    void whenPagingBackwards_thenItemsAreInAscendingOrder() {
+        when(itemRepository.findRankByIdAndUserId(9, 1)).thenReturn(Optional.of(900L));
+        when(itemRepository.findViewsByUserIdBefore(1, 900L, 9, Limit.of(3)))
+                .thenReturn(List.of(itemWithId(7), itemWithId(4), itemWithId(2)));
+
+        ItemPage page = itemService.findPageByUserUserId(1, null, 9, 2);
+
+        assert page.getItems().get(0).getId() == 4 : "Items should be in ascending order";
+        assert page.getPreviousCursor() == 4 : "Previous cursor should be the first id on the page";
+        assert page.getNextCursor() == 7 : "Next cursor should be the last id on the page";
+    }
+
+    @Test
+    void whenPagingForward_thenPageStartsAfterTheCursorsRank() {
+        when(itemRepository.findRankByIdAndUserId(7, 1)).thenReturn(Optional.of(700L));
+        when(itemRepository.findViewsByUserIdAfter(1, 700L, 7, Limit.of(3)))
+                .thenReturn(List.of(itemWithId(2), itemWithId(9)));
+
+        ItemPage page = itemService.findPageByUserUserId(1, 7, null, 2);
+
+        assertEquals(List.of(2, 9), page.getItems().stream().map(ItemView::getId).toList());
+        assertEquals(2, page.getPreviousCursor());
+        assert !page.hasNext() : "Last page has no next page";
+    }
+
+    @Test
+    void whenCursorItemIsGone_thenFirstPageIsShown() {
+        when(itemRepository.findRankByIdAndUserId(7, 1)).thenReturn(Optional.empty());
+        when(itemRepository.findViewsByUserId(1, Limit.of(3))).thenReturn(List.of(itemWithId(4)));
+
+        ItemPage page = itemService.findPageByUserUserId(1, 7, null, 2);
+
+        assertEquals(4, page.getItems().get(0).getId());
+        assert !page.hasPrevious() : "First page has no previous page";
+    }
+
+    @Test
+    void whenCreateItem_thenItIsPlacedLast() {
+        item.setUser(new User(1, "owner"));
+        when(itemRepository.findMaxRankByUserId(1)).thenReturn(500L);
+
+        itemService.create(item);
+
+        assertEquals(500L + ItemRankRebalancer.GAP, item.getRank());
+        InOrder inOrder = inOrder(rankRebalancer, itemRepository);
+        inOrder.verify(rankRebalancer).lock(1);
+        inOrder.verify(itemRepository).findMaxRankByUserId(1);
+    }
+
+    @Test
+    void whenItemIsMovedBetweenTwoItems_thenOnlyItsRankIsWritten() {
+        when(itemRepository.findRankByIdAndUserId(5, 1)).thenReturn(Optional.of(900L));
+        when(itemRepository.findRankByIdAndUserId(2, 1)).thenReturn(Optional.of(100L));
+        when(itemRepository.findRanksAfter(1, 100L, 2, 5, Limit.of(1))).thenReturn(List.of(300L));
+
+        itemService.move(1, 5, 2, null);
+
+        verify(rankRebalancer).lock(1);
+        verify(itemRepository).updateRank(5, 1, 200L);
+        verify(rankRebalancer, never()).rebalance(anyInt());
+        verify(rankRebalancer, never()).rebalanceLater(anyInt());
+    }
+
+    @Test
+    void whenItemIsMovedToTheTop_thenItGetsRankBeforeTheFirst() {
+        when(itemRepository.findRankByIdAndUserId(5, 1)).thenReturn(Optional.of(900L));
+        when(itemRepository.findFirstRanks(1, 5, Limit.of(1))).thenReturn(List.of(100L));
+
+        itemService.move(1, 5, null, null);
+
+        verify(itemRepository).updateRank(5, 1, 100L - ItemRankRebalancer.GAP);
+    }
+
+    @Test
+    void whenItemIsAlreadyInPlace_thenNothingIsWritten() {
+        when(itemRepository.findRankByIdAndUserId(5, 1)).thenReturn(Optional.of(250L));
+        when(itemRepository.findRankByIdAndUserId(3, 1)).thenReturn(Optional.of(300L));
+        when(itemRepository.findRanksBefore(1, 300L, 3, 5, Limit.of(1))).thenReturn(List.of(200L));
+
+        itemService.move(1, 5, null, 3);
+
+        verify(itemRepository, never()).updateRank(anyInt(), anyInt(), anyLong());
+    }
+
+    @Test
+    void whenGapIsUsedUp_thenRanksAreRebalancedBeforeMoving() {
+        when(itemRepository.findRankByIdAndUserId(5, 1)).thenReturn(Optional.of(900L));
+        when(itemRepository.findRankByIdAndUserId(2, 1)).thenReturn(Optional.of(100L)).thenReturn(Optional.of(65536L));
+        when(itemRepository.findRanksAfter(eq(1), anyLong(), eq(2), eq(5), eq(Limit.of(1))))
+                .thenReturn(List.of(101L)).thenReturn(List.of(131072L));
+
+        itemService.move(1, 5, 2, null);
+
+        verify(rankRebalancer).rebalance(1);
+        verify(itemRepository).updateRank(5, 1, 98304L);
+    }
+
+    @Test
+    void whenGapGetsSmall_thenRebalanceIsScheduled() {
+        when(itemRepository.findRankByIdAndUserId(5, 1)).thenReturn(Optional.of(900L));
+        when(itemRepository.findRankByIdAndUserId(2, 1)).thenReturn(Optional.of(100L));
+        when(itemRepository.findRanksAfter(1, 100L, 2, 5, Limit.of(1))).thenReturn(List.of(110L));
+
+        itemService.move(1, 5, 2, null);
+
+        verify(itemRepository).updateRank(5, 1, 105L);
+        verify(rankRebalancer).rebalanceLater(1);
+    }
+
+    @Test
+    void whenMovingOtherUsersItem_thenItIsNotFound() {
+        when(itemRepository.findRankByIdAndUserId(5, 2)).thenReturn(Optional.empty());
+
+        assertThrows(EntityNotFoundException.class, () -> itemService.move(2, 5, null, null));
+        verify(itemRepository, never()).updateRank(anyInt(), anyInt(), anyLong());
+    }
+
+    @Test
+    void whenWishlistIsCached_thenRepositoryIsOnlyQueriedOnce() {
+        when(itemRepository.findByUserUserId(1)).thenReturn(List.of(item));
+
+        itemService.findByUserUserId(1);
+        itemService.findByUserUserId(1);
+
+        verify(itemRepository, times(1)).findByUserUserId(1);
+        assert wishlistCache.stats().getWishlistHits() == 1 : "Second lookup should be a cache hit";
+    }
+
+    @Test
+    void whenItemIsUpdated_thenOwnersWishlistIsEvicted() {
+        item.setUser(new User(1, "owner"));
+        when(itemRepository.findByUserUserId(1)).thenReturn(List.of(item));
+        when(itemRepository.updateIfCurrent(eq(1), eq(1), anyInt(), any(), any(), any())).thenReturn(1);
+
+        itemService.findByUserUserId(1);
+        itemService.update(1, 1, item);
+        itemService.findByUserUserId(1);
+
+        verify(itemRepository, times(2)).findByUserUserId(1);
+    }
+
+    @Test
+    void whenWishlistIsUnchanged_thenVersionIsStable() {
+        String version = itemService.wishlistVersion(1);
+        assert version.equals(itemService.wishlistVersion(1)) : "Version should not change without writes";
+        assert !version.equals(itemService.wishlistVersion(2)) : "Users should not share versions";
+        verifyNoInteractions(itemRepository);
+    }
+
+    // Fremmede og ukendte id'er i requesten må ikke give events (og dermed fylde brugerens SSE forbindelser)
+    @Test
+    void whenDeletingIdsTheUserDoesNotOwn_thenOnlyOwnedItemsGiveEvents() {
+        when(itemRepository.findIdsByIdInAndUserId(List.of(1, 2, 3), 1)).thenReturn(List.of(2));
+        when(itemRepository.deleteByIdInAndUserId(List.of(2), 1)).thenReturn(1);
+
+        assertEquals(1, itemService.deleteByIdsForUser(1, List.of(1, 2, 3)));
+
+        InOrder inOrder = inOrder(rankRebalancer, itemRepository);
+        inOrder.verify(rankRebalancer).lock(1);
+        inOrder.verify(itemRepository).findIdsByIdInAndUserId(List.of(1, 2, 3), 1);
+        verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof ItemChangedEvent changed
+                && changed.getType() == ItemChangedEvent.Type.DELETED && changed.getItemId() == 2));
+        verifyNoMoreInteractions(eventPublisher);
+    }
+
+    @Test
+    void whenNoRequestedIdIsOwned_thenNothingIsDeleted() {
+        when(itemRepository.findIdsByIdInAndUserId(List.of(5), 2)).thenReturn(List.of());
+
+        assertEquals(0, itemService.deleteByIdsForUser(2, List.of(5)));
+
+        verify(itemRepository, never()).deleteByIdInAndUserId(any(), anyInt());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void whenItemIsCreatedOrDeleted_thenOwnersVersionChanges() {
+        item.setUser(new User(1, "owner"));
+        when(itemRepository.findById(1)).thenReturn(Optional.of(item));
+
+        String before = itemService.wishlistVersion(1);
+        itemService.create(item);
+        String afterCreate = itemService.wishlistVersion(1);
+        itemService.deleteById(1);
+        String afterDelete = itemService.wishlistVersion(1);
+
+        assert !before.equals(afterCreate) : "Create should change the version";
+        assert !afterCreate.equals(afterDelete) : "Delete should change the version";
+    }
+
+    @Test
+    void whenWriteBehindIsEnabled_thenUpdateIsQueuedInsteadOfWritten() {
+        when(writeBehindQueue.isEnabled()).thenReturn(true);
 
-        Item result = itemService.update(1, updatedItem);
+        itemService.update(1, 1, item);
 
-        assert "Updated Name".equals(result.getName()) : "Item name should be updated";
-        verify(itemRepository).save(item);
-        verify(itemRepository).findById(1);
+        verify(writeBehindQueue).update(1, 1, item);
+        verify(itemRepository, never()).updateIfCurrent(anyInt(), anyInt(), anyInt(), any(), any(), any());
     }
 }
@@ -0,0 +1,172 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.ItemUpdateConflictException;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.entity.Item;
+import com.boefcity.wishlistv1.repository.ItemRepository;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ItemWriteBehindQueueTest {
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final WishlistCache wishlistCache = new WishlistCache(100, 100, Duration.ofMinutes(5));
+
+    private ItemWriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        // Slået til, men med et interval så langt at testene selv styrer hvornår der flushes
+        queue = new ItemWriteBehindQueue(itemRepository, jdbcTemplate, transactionManager, wishlistCache,
+                true, Duration.ofHours(1), 100);
+    }
+
+    private Item edit(String name, int version) {
+        Item item = new Item();
+        item.setName(name);
+        item.setVersion(version);
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> flushedRows() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        return rows.getValue();
+    }
+
+    @Test
+    void whenItemIsEditedTwice_thenOneUpdateIsWritten() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 3)));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+
+        queue.update(7, 1, edit("first", 3));
+        queue.update(7, 1, edit("second", 4)); // Formularen viste den ventende ændring (version 4)
+
+        // Read-your-writes før flush
+        assertEquals("second", queue.pendingView(1).orElseThrow().getName());
+        verify(itemRepository, times(1)).findViewById(1);
+
+        queue.flush();
+
+        List<Object[]> rows = flushedRows();
+        assertEquals(1, rows.size());
+        // Hver ændring tæller versionen op, men databasen tjekkes mod den version den havde (3)
+        assertArrayEquals(new Object[]{"second", null, null, 5, 1, 7, 3}, rows.get(0));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void whenTwoTabsEditThePendingVersion_thenTheSecondConflicts() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 3)));
+        queue.update(7, 1, edit("first", 3));
+
+        // Begge faner åbnede formularen efter den første ændring og så version 4
+        queue.update(7, 1, edit("tab A", 4));
+        ItemUpdateConflictException conflict = assertThrows(ItemUpdateConflictException.class,
+                () -> queue.update(7, 1, edit("tab B", 4)));
+
+        assertEquals("tab A", conflict.getCurrent().getName());
+        assertEquals(5, conflict.getCurrent().getVersion());
+        assertEquals("tab A", queue.pendingView(1).orElseThrow().getName());
+    }
+
+    @Test
+    void whenFormVersionIsOlderThanPendingEdit_thenItConflicts() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 3)));
+
+        queue.update(7, 1, edit("first tab", 3));
+
+        ItemUpdateConflictException conflict = assertThrows(ItemUpdateConflictException.class,
+                () -> queue.update(7, 1, edit("second tab", 3)));
+        assertEquals("first tab", conflict.getCurrent().getName());
+    }
+
+    @Test
+    void whenItemBelongsToAnotherUser_thenItIsNotQueued() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 0)));
+
+        assertThrows(EntityNotFoundException.class, () -> queue.update(8, 1, edit("not mine", 0)));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void whenPageIsRead_thenPendingEditsAreShown() {
+        when(itemRepository.findViewById(2)).thenReturn(Optional.of(new ItemView(2, 7, "old", null, null, 0)));
+        queue.update(7, 2, edit("new", 0));
+
+        ItemPage page = new ItemPage(List.of(new ItemView(1, 7, "a", null, null, 0), new ItemView(2, 7, "old", null, null, 0)),
+                null, null, 20);
+        ItemPage shown = queue.overlay(page);
+
+        assertEquals("a", shown.getItems().get(0).getName());
+        assertEquals("new", shown.getItems().get(1).getName());
+        assertEquals(1, shown.getItems().get(1).getVersion());
+    }
+
+    @Test
+    void whenItemIsEditedDuringFlush_thenNextEditBuildsOnTheFlushedVersion() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 0)));
+        queue.update(7, 1, edit("first", 0));
+        // Endnu en ændring ankommer mens den første bliver skrevet
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            queue.update(7, 1, edit("during flush", 1));
+            return new int[]{1};
+        });
+
+        queue.flush();
+
+        ItemView pending = queue.pendingView(1).orElseThrow();
+        assertEquals("during flush", pending.getName());
+        assertEquals(2, pending.getVersion());
+    }
+
+    @Test
+    void whenItemIsDeleted_thenItsPendingEditIsDropped() {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 0)));
+        queue.update(7, 1, edit("edit", 0));
+
+        queue.discard(8, List.of(1)); // En anden bruger kan ikke fjerne ændringen
+        assertEquals(1, queue.size());
+        queue.discard(7, List.of(1));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void whenShuttingDown_thenPendingEditsAreWritten() throws InterruptedException {
+        when(itemRepository.findViewById(1)).thenReturn(Optional.of(new ItemView(1, 7, "old", null, null, 0)));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+        queue.update(7, 1, edit("edit", 0));
+
+        queue.shutdown();
+
+        assertEquals(1, flushedRows().size());
+        assertEquals(0, queue.size());
+    }
+}
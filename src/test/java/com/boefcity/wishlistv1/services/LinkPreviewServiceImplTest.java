@@ -0,0 +1,183 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.entity.LinkPreview;
+import com.boefcity.wishlistv1.repository.LinkPreviewRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Kører mod en lokal stub HTTP server i stedet for rigtige sider
+@ExtendWith(MockitoExtension.class)
+public class LinkPreviewServiceImplTest {
+
+    @Mock
+    private LinkPreviewRepository linkPreviewRepository;
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/product", exchange -> respond(exchange.getResponseBody(), exchange, 200, "text/html; charset=utf-8",
+                "<html><head><title>Fallback</title>"
+                        + "<meta property=\"og:title\" content=\"Red bike &amp; helmet\">"
+                        + "<meta content='/images/bike.png' property='og:image'></head></html>"));
+        server.createContext("/plain", exchange -> respond(exchange.getResponseBody(), exchange, 200, "text/html",
+                "<html><head><title>\n  Just a title\n</title></head></html>"));
+        server.createContext("/moved", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/product");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/chunked", exchange -> {
+            // Længde 0 får serveren til at sende body'en chunked
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write("<html><head><title>Sent in".getBytes(StandardCharsets.UTF_8));
+                body.flush();
+                body.write(" chunks</title></head></html>".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/missing", exchange -> respond(exchange.getResponseBody(), exchange, 404, "text/html", "nope"));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(OutputStream body, HttpExchange exchange, int status,
+                                String contentType, String html) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        body.write(bytes);
+        exchange.close();
+    }
+
+    private LinkPreviewServiceImpl service(boolean allowPrivateAddresses) {
+        return service(2, Duration.ZERO, allowPrivateAddresses);
+    }
+
+    private LinkPreviewServiceImpl service(int maxConcurrent, Duration perHostInterval, boolean allowPrivateAddresses) {
+        return new LinkPreviewServiceImpl(linkPreviewRepository, maxConcurrent, 10, perHostInterval, Duration.ofSeconds(2),
+                65536, Duration.ofDays(7), Duration.ofDays(1), allowPrivateAddresses);
+    }
+
+    @Test
+    void whenPageHasOpenGraphTags_thenTitleAndImageAreUsed() {
+        LinkPreview preview = service(true).fetch(baseUrl + "/product");
+
+        assertTrue(preview.isAvailable());
+        assertEquals("Red bike & helmet", preview.getTitle());
+        assertEquals(baseUrl + "/images/bike.png", preview.getImageUrl());
+    }
+
+    @Test
+    void whenPageHasNoOpenGraphTags_thenTitleTagIsUsed() {
+        assertEquals("Just a title", service(true).fetch(baseUrl + "/plain").getTitle());
+    }
+
+    @Test
+    void whenPageRedirects_thenRedirectIsFollowed() {
+        assertEquals("Red bike & helmet", service(true).fetch(baseUrl + "/moved").getTitle());
+    }
+
+    @Test
+    void whenPageIsSentChunked_thenChunksAreJoined() {
+        assertEquals("Sent in chunks", service(true).fetch(baseUrl + "/chunked").getTitle());
+    }
+
+    @Test
+    void whenPageIsMissing_thenPreviewIsUnavailable() {
+        assertFalse(service(true).fetch(baseUrl + "/missing").isAvailable());
+    }
+
+    @Test
+    void whenLinkPointsToLocalAddress_thenItIsNotFetched() {
+        assertFalse(service(false).fetch(baseUrl + "/product").isAvailable());
+    }
+
+    @Test
+    void whenHostMustWait_thenOtherHostsAreFetchedMeanwhile() {
+        // Én tråd, og samme host må først kaldes igen om en time
+        LinkPreviewServiceImpl service = service(1, Duration.ofHours(1), true);
+        String first = baseUrl + "/product";
+        String second = baseUrl + "/plain";
+        String otherHost = "http://localhost:" + server.getAddress().getPort() + "/plain";
+
+        service.requestPreview(first);
+        service.requestPreview(second);
+        service.requestPreview(otherHost);
+
+        verify(linkPreviewRepository, timeout(5000)).save(argThat(preview -> preview.getUrl().equals(first)));
+        verify(linkPreviewRepository, timeout(5000)).save(argThat(preview -> preview.getUrl().equals(otherHost)));
+        assertTrue(service.isFetching(List.of(second)), "Waits for its host without taking the only thread");
+        service.shutdown();
+    }
+
+    @Test
+    void whenHostsSlotHasPassed_thenItIsForgotten() throws InterruptedException {
+        LinkPreviewServiceImpl service = service(2, Duration.ofMillis(100), true);
+
+        service.requestPreview(baseUrl + "/product");
+        service.requestPreview("http://localhost:" + server.getAddress().getPort() + "/plain");
+        verify(linkPreviewRepository, timeout(5000).times(2)).save(any());
+        assertEquals(2, service.pacedHosts());
+
+        // Caffeines timer-hjul rydder op med ca. ét sekunds præcision
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (service.pacedHosts() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, service.pacedHosts(), "Hosts must not be kept after their next slot");
+        service.shutdown();
+    }
+
+    @Test
+    void whenAddressIsInternal_thenItCountsAsPrivate() throws IOException {
+        for (String address : List.of("127.0.0.1", "10.1.2.3", "172.16.0.1", "192.168.1.1", "169.254.169.254",
+                "100.64.0.1", "100.127.255.254", "0.0.0.0", "::1", "fe80::1", "fc00::1", "fd12:3456::1",
+                "::ffff:10.0.0.1", "64:ff9b::a00:1", "2002:a00:1::1", "2002:7f00:1::", "2001:0:4136:e378:8000:63bf:3fff:fdd2")) {
+            assertTrue(LinkPreviewServiceImpl.isPrivate(InetAddress.getByName(address)), address);
+        }
+        for (String address : List.of("8.8.8.8", "100.63.255.255", "100.128.0.1", "2001:4860:4860::8888", "64:ff9b::808:808",
+                "2002:808:808::1")) {
+            assertFalse(LinkPreviewServiceImpl.isPrivate(InetAddress.getByName(address)), address);
+        }
+    }
+
+    @Test
+    void whenPreviewIsMissing_thenItIsFetchedInTheBackground() {
+        LinkPreviewServiceImpl service = service(true);
+        when(linkPreviewRepository.findAllById(any())).thenReturn(List.of());
+
+        Map<String, LinkPreview> previews = service.previewsFor(List.of(baseUrl + "/product"));
+
+        assertTrue(previews.isEmpty(), "Rendering must not wait for the fetch");
+        verify(linkPreviewRepository, timeout(5000)).save(argThat(LinkPreview::isAvailable));
+        assertEquals(1, service.previewsFor(List.of(baseUrl + "/product")).size());
+    }
+}
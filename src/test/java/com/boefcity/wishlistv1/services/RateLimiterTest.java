@@ -0,0 +1,134 @@
+package com.boefcity.wishlistv1.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    // Uret står stille medmindre testen flytter det
+    private final AtomicLong now = new AtomicLong(-5_000_000_000L);
+
+    private RateLimiter limiter(int permits, Duration period, int burst) {
+        return new RateLimiter("test", permits, period, burst, 1024, now::get);
+    }
+
+    @Test
+    void whenBurstIsUsed_thenNextRequestIsRejected() {
+        RateLimiter limiter = limiter(10, Duration.ofSeconds(10), 3);
+
+        assertTrue(limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1));
+        assertFalse(limiter.tryAcquire(1));
+        assertEquals(1, limiter.rejected());
+    }
+
+    @Test
+    void whenIntervalHasPassed_thenOneMoreTokenIsAvailable() {
+        RateLimiter limiter = limiter(10, Duration.ofSeconds(10), 1);
+        byte[] ip = {10, 0, 0, 1};
+        assertTrue(limiter.tryAcquire(ip));
+        assertFalse(limiter.tryAcquire(ip));
+
+        now.addAndGet(limiter.retryAfter().toNanos() - 1);
+        assertFalse(limiter.tryAcquire(ip));
+        now.incrementAndGet();
+        assertTrue(limiter.tryAcquire(ip));
+        assertFalse(limiter.tryAcquire(ip));
+    }
+
+    @Test
+    void whenIdleForLong_thenBucketHoldsNoMoreThanBurst() {
+        RateLimiter limiter = limiter(10, Duration.ofSeconds(10), 2);
+
+        now.addAndGet(Duration.ofHours(1).toNanos());
+
+        assertTrue(limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1));
+        assertFalse(limiter.tryAcquire(1));
+    }
+
+    @Test
+    void whenOneKeyIsRejected_thenOtherKeysAreNot() {
+        RateLimiter limiter = limiter(1, Duration.ofMinutes(1), 1);
+        assertTrue(limiter.tryAcquire(1));
+        assertFalse(limiter.tryAcquire(1));
+
+        // Med 1024 stripes og tilfældigt seed kan et par nøgler dele stripe - de fleste må ikke
+        int admitted = 0;
+        for (long key = 2; key < 102; key++) {
+            if (limiter.tryAcquire(key)) {
+                admitted++;
+            }
+        }
+        assertTrue(admitted > 80, "Only " + admitted + " of 100 other keys were admitted");
+    }
+
+    // "Aa" og "BB" har samme String.hashCode - det må ikke betyde at de deler bucket
+    @Test
+    void whenKeysHaveTheSameStringHashCode_thenTheyDoNotShareABucket() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        byte[] first = "Aa".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "BB".getBytes(StandardCharsets.UTF_8);
+
+        // Hver limiter har sin egen nøgle, så de deler højst stripe i en enkelt af dem (1 ud af 1024)
+        int separate = 0;
+        for (int i = 0; i < 20; i++) {
+            RateLimiter limiter = limiter(1, Duration.ofMinutes(1), 1);
+            assertTrue(limiter.tryAcquire(first));
+            if (limiter.tryAcquire(second)) {
+                separate++;
+            }
+        }
+        assertTrue(separate >= 19, "Keys shared a bucket in " + (20 - separate) + " of 20 limiters");
+    }
+
+    // Testvektoren fra SipHash artiklen: nøgle 00..0f, besked 00..0e
+    @Test
+    void whenHashingTheReferenceVector_thenSipHashMatches() {
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        byte[] message = new byte[15];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        assertEquals(0xa129ca6149be45e5L, RateLimiter.sipHash(k0, k1, message));
+        assertEquals(RateLimiter.sipHash(k0, k1, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}),
+                RateLimiter.sipHash(k0, k1, 0x0807060504030201L));
+    }
+
+    @Test
+    void whenManyThreadsRace_thenExactlyBurstIsAdmitted() throws InterruptedException {
+        RateLimiter limiter = limiter(1, Duration.ofHours(1), 500);
+        LongAdder admitted = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire(42)) {
+                        admitted.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(500, admitted.sum());
+        assertEquals(8 * 1000 - 500, limiter.rejected());
+    }
+
+    @Test
+    void whenLimitIsZero_thenItIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> limiter(0, Duration.ofMinutes(1), 1));
+    }
+}
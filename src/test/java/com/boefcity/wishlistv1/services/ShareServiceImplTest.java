@@ -0,0 +1,140 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.ItemService;
+import com.boefcity.wishlistv1.LinkPreviewService;
+import com.boefcity.wishlistv1.dto.ItemPage;
+import com.boefcity.wishlistv1.dto.ItemView;
+import com.boefcity.wishlistv1.dto.SharedPage;
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.IContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ShareServiceImplTest {
+
+    private static final String TOKEN = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQ";
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ItemService itemService;
+
+    @Mock
+    private LinkPreviewService linkPreviewService;
+
+    @Mock
+    private ITemplateEngine templateEngine;
+
+    @Mock
+    private ObjectProvider<ResourceUrlProvider> resourceUrlProvider;
+
+    @Spy // Rigtig cache, så vi kan se hvornår der renderes igen
+    private SharedPageCache sharedPageCache = new SharedPageCache(100, Duration.ofMinutes(5));
+
+    @InjectMocks
+    private ShareServiceImpl shareService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(userRepository.findUserIdByShareToken(TOKEN)).thenReturn(Optional.of(7));
+        lenient().when(userRepository.findUserNameByUserId(7)).thenReturn(Optional.of("owner"));
+        lenient().when(itemService.wishlistVersion(7)).thenReturn("v1");
+        lenient().when(itemService.findPageByUserUserId(eq(7), any(), isNull(), eq(ItemService.MAX_PAGE_SIZE)))
+                .thenReturn(new ItemPage(List.of(new ItemView(1, 7, "Bike", null, "shop.example", 0)), null, null, 100));
+        lenient().when(linkPreviewService.previewsFor(any())).thenReturn(Map.of());
+        lenient().when(templateEngine.process(eq("sharedItems"), any(IContext.class))).thenReturn("<html>Bike</html>");
+    }
+
+    @Test
+    void whenSharedPageIsRequestedTwice_thenItIsRenderedOnce() {
+        SharedPage first = shareService.findPage(TOKEN, null).orElseThrow();
+        SharedPage second = shareService.findPage(TOKEN, null).orElseThrow();
+
+        assertEquals("<html>Bike</html>", first.getHtml());
+        assertSame(first, second);
+        verify(templateEngine, times(1)).process(eq("sharedItems"), any(IContext.class));
+        verify(userRepository, times(1)).findUserIdByShareToken(TOKEN);
+    }
+
+    @Test
+    void whenWishlistChanges_thenPageIsRenderedAgain() {
+        shareService.findPage(TOKEN, null);
+        when(itemService.wishlistVersion(7)).thenReturn("v2");
+
+        SharedPage page = shareService.findPage(TOKEN, null).orElseThrow();
+
+        assertEquals("v2", page.getVersion());
+        verify(templateEngine, times(2)).process(eq("sharedItems"), any(IContext.class));
+    }
+
+    @Test
+    void whenItemChangedEventArrives_thenCachedPagesAreDropped() {
+        shareService.findPage(TOKEN, null);
+
+        sharedPageCache.itemChanged(new ItemChangedEvent(ItemChangedEvent.Type.DELETED, 7, 1, null, null, null));
+        shareService.findPage(TOKEN, null);
+
+        verify(templateEngine, times(2)).process(eq("sharedItems"), any(IContext.class));
+    }
+
+    @Test
+    void whenPreviewsAreStillFetching_thenPageIsNotCached() {
+        when(linkPreviewService.isFetching(any())).thenReturn(true);
+
+        assertFalse(shareService.findPage(TOKEN, null).orElseThrow().isComplete());
+        shareService.findPage(TOKEN, null);
+
+        verify(templateEngine, times(2)).process(eq("sharedItems"), any(IContext.class));
+    }
+
+    @Test
+    void whenTokenIsUnknown_thenNoPageAndTheAnswerIsCached() {
+        String unknown = TOKEN.replace('a', 'b');
+        when(userRepository.findUserIdByShareToken(unknown)).thenReturn(Optional.empty());
+
+        assertTrue(shareService.findPage(unknown, null).isEmpty());
+        assertTrue(shareService.findPage(unknown, null).isEmpty());
+
+        verify(userRepository, times(1)).findUserIdByShareToken(unknown);
+    }
+
+    @Test
+    void whenTokenIsMalformed_thenDatabaseIsNotAsked() {
+        assertTrue(shareService.findPage("../etc", null).isEmpty());
+
+        verify(userRepository, never()).findUserIdByShareToken(any());
+    }
+
+    @Test
+    void whenTokenIsCreated_thenItIsUrlSafeAndTheOldOneStopsWorking() {
+        shareService.findPage(TOKEN, null);
+        when(userRepository.findShareTokenByUserId(7)).thenReturn(TOKEN);
+        when(userRepository.updateShareToken(eq(7), anyString())).thenReturn(1);
+
+        String token = shareService.createToken(7);
+
+        assertTrue(token.matches("[A-Za-z0-9_-]{43}"));
+        assertNotEquals(TOKEN, token);
+        when(userRepository.findUserIdByShareToken(TOKEN)).thenReturn(Optional.empty());
+        assertTrue(shareService.findPage(TOKEN, null).isEmpty());
+    }
+}
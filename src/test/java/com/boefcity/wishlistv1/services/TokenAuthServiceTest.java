@@ -0,0 +1,107 @@
+package com.boefcity.wishlistv1.services;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenAuthServiceTest {
+
+    private static final String SECRET = "a-test-secret-that-is-at-least-32-bytes";
+
+    private TokenAuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        authService = new TokenAuthService(new AuthTokenSigner(SECRET), Duration.ofMinutes(30), true);
+    }
+
+    @Test
+    void whenTokenIsIssued_thenItVerifiesToTheSameUser() {
+        Instant now = Instant.now();
+        TokenAuthService.Token token = authService.verify(authService.issue(42, now), now);
+        assertNotNull(token);
+        assertEquals(42, token.getUserId());
+    }
+
+    @Test
+    void whenTokenHasExpired_thenItIsRejected() {
+        Instant issued = Instant.now();
+        String token = authService.issue(42, issued);
+        assertNull(authService.verify(token, issued.plus(Duration.ofMinutes(31))));
+    }
+
+    @Test
+    void whenUserIdIsChanged_thenSignatureNoLongerMatches() {
+        Instant now = Instant.now();
+        String token = authService.issue(42, now);
+        assertNull(authService.verify("43" + token.substring(2), now));
+    }
+
+    @Test
+    void whenTokenIsSignedWithAnotherSecret_thenItIsRejected() {
+        Instant now = Instant.now();
+        TokenAuthService other = new TokenAuthService(new AuthTokenSigner("another-secret-that-is-at-least-32-bytes"),
+                Duration.ofMinutes(30), true);
+        assertNull(authService.verify(other.issue(42, now), now));
+    }
+
+    @Test
+    void whenValueIsSignedForAnotherPurpose_thenItIsNotAnAuthToken() {
+        Instant now = Instant.now();
+        // Samme nøgle og en payload der ligner et auth token, men signeret som flash-cookie
+        String flash = new AuthTokenSigner(SECRET).sign(AuthTokenSigner.Purpose.FLASH,
+                "42." + now.plus(Duration.ofMinutes(5)).getEpochSecond());
+        assertNull(authService.verify(flash, now));
+    }
+
+    @Test
+    void whenTokenIsGarbage_thenItIsRejected() {
+        assertNull(authService.verify("garbage", Instant.now()));
+        assertNull(authService.verify("", Instant.now()));
+    }
+
+    @Test
+    void whenLoggedIn_thenCookieIdentifiesTheUser() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authService.login(7, new MockHttpServletRequest(), response);
+
+        String header = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(header.contains("HttpOnly"));
+        assertTrue(header.contains("Secure"));
+        assertTrue(header.contains("SameSite=Lax"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(response.getCookie(TokenAuthService.COOKIE_NAME));
+        assertEquals(7, authService.currentUserId(request));
+        assertNull(request.getSession(false)); // Ingen session oprettet
+    }
+
+    @Test
+    void whenNoCookie_thenNoUser() {
+        assertNull(authService.currentUserId(new MockHttpServletRequest()));
+    }
+
+    @Test
+    void whenMoreThanHalfTheLifetimeHasPassed_thenCookieIsRenewed() {
+        MockHttpServletRequest fresh = new MockHttpServletRequest();
+        fresh.setCookies(new Cookie(TokenAuthService.COOKIE_NAME, authService.issue(7, Instant.now())));
+        MockHttpServletResponse freshResponse = new MockHttpServletResponse();
+        authService.renewIfNeeded(fresh, freshResponse);
+        assertNull(freshResponse.getHeader(HttpHeaders.SET_COOKIE));
+
+        MockHttpServletRequest old = new MockHttpServletRequest();
+        old.setCookies(new Cookie(TokenAuthService.COOKIE_NAME,
+                authService.issue(7, Instant.now().minus(Duration.ofMinutes(20)))));
+        MockHttpServletResponse oldResponse = new MockHttpServletResponse();
+        authService.renewIfNeeded(old, oldResponse);
+        assertNotNull(oldResponse.getCookie(TokenAuthService.COOKIE_NAME));
+    }
+}
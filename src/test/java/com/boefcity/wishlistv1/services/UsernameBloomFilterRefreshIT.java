@@ -0,0 +1,45 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Intervallet er så langt at testen selv styrer hvornår der hentes nye brugere
+@SpringBootTest(properties = "user.bloom.refresh-interval=1h")
+public class UsernameBloomFilterRefreshIT {
+
+    @Autowired
+    private UserServiceImpl userService;
+
+    @Autowired
+    private UsernameBloomFilter usernameBloomFilter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenUserIsCreatedOnAnotherInstance_thenRefreshLetsItLogIn() {
+        // Direkte i databasen som fra en anden instans - ingen @PostPersist her
+        jdbcTemplate.update("insert into users (user_name, user_password) values (?, ?)", "remoteUser", "pass");
+        // Uden refresh svarer filteret (næsten altid) "findes ikke"
+
+        userService.refreshUsernameBloomFilter();
+
+        assertTrue(userService.checkLogin("remoteUser", "pass"));
+        assertTrue(usernameBloomFilter.mightContain("remoteUser"));
+        assertNotNull(userService.findByUserName("remoteUser"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.boefcity.wishlistv1.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UsernameBloomFilterTest {
+
+    private UsernameBloomFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new UsernameBloomFilter(1000, 0.01);
+    }
+
+    @Test
+    void whenNotLoaded_thenEveryNameMightExist() {
+        assertTrue(filter.mightContain("unknownUser"));
+    }
+
+    @Test
+    void whenNamesAreAdded_thenTheyAreNeverReportedMissing() {
+        for (int i = 0; i < 1000; i++) {
+            filter.put("user" + i);
+        }
+        filter.markLoaded();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    void whenNameDiffersOnlyInCase_thenItMightExist() {
+        filter.put("TestUser");
+        filter.markLoaded();
+        assertTrue(filter.mightContain("testuser"));
+    }
+
+    @Test
+    void whenFilterIsFilled_thenFalsePositiveRateIsNearConfigured() {
+        for (int i = 0; i < 1000; i++) {
+            filter.put("user" + i);
+        }
+        filter.markLoaded();
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        // 1% forventet - vi tillader lidt slæk
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+    }
+}
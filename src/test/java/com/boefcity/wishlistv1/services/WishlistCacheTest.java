@@ -0,0 +1,33 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.entity.Item;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WishlistCacheTest {
+
+    // En ændring på en anden instans invaliderer ikke denne - den ses senest efter ttl
+    @Test
+    void whenTtlHasPassed_thenWishlistAndVersionAreRenewed() throws InterruptedException {
+        WishlistCache cache = new WishlistCache(100, 100, Duration.ofSeconds(1));
+        AtomicInteger loads = new AtomicInteger();
+        String version = cache.version(1);
+        cache.getWishlist(1, () -> List.of(new Item()));
+        cache.getWishlist(1, () -> List.of(new Item()));
+        assertEquals(version, cache.version(1));
+
+        Thread.sleep(1100);
+
+        cache.getWishlist(1, () -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+        assertEquals(1, loads.get(), "The wishlist should be loaded again after the ttl");
+        assertNotEquals(version, cache.version(1), "An old ETag must not match after the ttl");
+    }
+}
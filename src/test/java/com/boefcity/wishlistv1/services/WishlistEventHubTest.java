@@ -0,0 +1,175 @@
+package com.boefcity.wishlistv1.services;
+
+import com.boefcity.wishlistv1.dto.WishlistEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WishlistEventHubTest {
+
+    // Heartbeats så sjældent at de ikke kommer med i testene
+    private final WishlistEventHub hub = new WishlistEventHub(4, 2, Duration.ofMinutes(30), Duration.ofHours(1));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        hub.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    // Samler events og tæller ned for hvert, så testen kan vente på de asynkrone sends
+    private static class RecordingSink implements WishlistEventHub.Sink {
+        final List<WishlistEvent> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch received;
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        RecordingSink(int expected) {
+            received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void send(WishlistEvent event) {
+            events.add(event);
+            received.countDown();
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static ItemChangedEvent updated(int userId, int itemId, String name) {
+        return new ItemChangedEvent(ItemChangedEvent.Type.UPDATED, userId, itemId, name, "description", "link");
+    }
+
+    @Test
+    void testEventsReachAllConnectionsOfTheUserInOrder() throws InterruptedException {
+        RecordingSink firstTab = new RecordingSink(2);
+        RecordingSink secondTab = new RecordingSink(2);
+        RecordingSink otherUser = new RecordingSink(1);
+        hub.subscribe(1, firstTab);
+        hub.subscribe(1, secondTab);
+        hub.subscribe(2, otherUser);
+
+        hub.itemChanged(updated(1, 10, "first"));
+        hub.itemChanged(updated(1, 10, "second"));
+
+        assertTrue(firstTab.received.await(5, TimeUnit.SECONDS));
+        assertTrue(secondTab.received.await(5, TimeUnit.SECONDS));
+        for (RecordingSink sink : List.of(firstTab, secondTab)) {
+            assertEquals(List.of("first", "second"), sink.events.stream().map(WishlistEvent::getName).toList());
+            assertEquals("updated", sink.events.get(0).getType());
+            assertEquals(10, sink.events.get(0).getItemId());
+            assertTrue(sink.events.get(0).getId() < sink.events.get(1).getId());
+        }
+        assertTrue(otherUser.events.isEmpty());
+        // Tælles efter send, så det kan komme lidt efter eventet
+        awaitTrue(() -> registry.get("wishlist.events.sent").functionCounter().count() == 4);
+    }
+
+    @Test
+    void testSlowConnectionIsDroppedWithoutBlockingThePublisher() throws InterruptedException {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        hub.subscribe(1, new WishlistEventHub.Sink() {
+            @Override
+            public void send(WishlistEvent event) {
+                stuck.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void heartbeat() {
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        });
+        RecordingSink fast = new RecordingSink(6);
+        hub.subscribe(1, fast);
+
+        // Første event hænger i send, de næste 4 fylder køen og det sidste er ét for meget.
+        // Den hurtige forbindelse når at sende hvert event før det næste kommer.
+        hub.itemChanged(updated(1, 10, "0"));
+        assertTrue(stuck.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            int sent = i;
+            awaitTrue(() -> fast.events.size() == sent);
+            hub.itemChanged(updated(1, 10, Integer.toString(i)));
+        }
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, hub.connections());
+        assertEquals(1, registry.get("wishlist.events.dropped").functionCounter().count(), 0.0);
+        // Den hurtige forbindelse fik det hele
+        assertTrue(fast.received.await(5, TimeUnit.SECONDS));
+        assertEquals(6, fast.events.size());
+        release.countDown();
+    }
+
+    @Test
+    void testConnectionsPerUserAreCapped() {
+        WishlistEventHub.Subscription first = hub.subscribe(1, new RecordingSink(0));
+        assertNotNull(hub.subscribe(1, new RecordingSink(0)));
+
+        assertNull(hub.subscribe(1, new RecordingSink(0)));
+        assertNotNull(hub.subscribe(2, new RecordingSink(0)));
+        assertEquals(3, registry.get("wishlist.events.connections").gauge().value(), 0.0);
+
+        // Lukker en fane, er der plads igen
+        first.unsubscribe();
+        first.unsubscribe();
+        assertNotNull(hub.subscribe(1, new RecordingSink(0)));
+        assertEquals(3, hub.connections());
+    }
+
+    @Test
+    void testUnsubscribedConnectionGetsNothing() throws InterruptedException {
+        RecordingSink closedTab = new RecordingSink(1);
+        RecordingSink openTab = new RecordingSink(1);
+        hub.subscribe(1, closedTab).unsubscribe();
+        hub.subscribe(1, openTab);
+
+        hub.itemChanged(updated(1, 10, "name"));
+
+        assertTrue(openTab.received.await(5, TimeUnit.SECONDS));
+        assertTrue(closedTab.events.isEmpty());
+        // Klienten lukkede selv - sink'en skal ikke lukkes igen
+        assertEquals(1, closedTab.closed.getCount());
+    }
+}